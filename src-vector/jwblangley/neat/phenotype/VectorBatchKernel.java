@@ -0,0 +1,32 @@
+package jwblangley.neat.phenotype;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BatchKernel using the incubating Vector API. Kept out of the main sources so that they still
+ * compile on Java 8. Compile against them with --add-modules jdk.incubator.vector (JDK 16+) and put
+ * the result on the classpath; BatchKernel.load then picks this kernel up when the module is
+ * available at run time
+ */
+class VectorBatchKernel implements BatchKernel {
+
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  @Override
+  public void multiplyAdd(double[] buffer, int sourceRow, double weight, double[] sums,
+      int length) {
+    final int upperBound = SPECIES.loopBound(length);
+    int s = 0;
+    for (; s < upperBound; s += SPECIES.length()) {
+      // Multiply then add, rounding each like the scalar kernel
+      DoubleVector.fromArray(SPECIES, buffer, sourceRow + s)
+          .mul(weight)
+          .add(DoubleVector.fromArray(SPECIES, sums, s))
+          .intoArray(sums, s);
+    }
+    for (; s < length; s++) {
+      sums[s] += buffer[sourceRow + s] * weight;
+    }
+  }
+}
@@ -1,25 +1,33 @@
 package jwblangley.neat.evolution;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import jwblangley.neat.genotype.NetworkGenotype;
+import jwblangley.neat.genotype.NeuronRegistry;
 import jwblangley.neat.proto.EvolutionOuterClass;
 import jwblangley.neat.proto.Genotypes;
 import jwblangley.neat.proto.ProtoEquivalent;
+import jwblangley.neat.util.CumulativeDistribution;
 
 /**
  * Class to control the evolution and growth of neural network at the core of the NEAT algorithm
  */
-public class Evolution implements ProtoEquivalent {
+public class Evolution implements ProtoEquivalent, AutoCloseable {
 
   private static final double INITIAL_COMPATIBILITY_DISTANCE_THRESHOLD = 10d;
   private static final double COMPATIBILITY_MODIFIER = 1.7d;
@@ -27,14 +35,39 @@ public class Evolution implements ProtoEquivalent {
   public static final double ADD_CONNECTION_MUTATION_RATE = 0.1f;
   public static final double ADD_NEURON_MUTATION_RATE = 0.1f;
   public static final int ADD_CONNECTION_ATTEMPTS = 10;
+  /**
+   * Minimum population size for which genotypes are matched to species in parallel
+   */
+  public static final int PARALLEL_SPECIATION_SIZE = 256;
+  /**
+   * Minimum number of children for which a generation is bred in parallel
+   */
+  public static final int PARALLEL_REPRODUCTION_SIZE = 256;
+  /**
+   * Seconds an idle thread of the default evaluation pool is kept before it exits
+   */
+  private static final long EVALUATION_THREAD_KEEP_ALIVE_SECONDS = 30;
 
   private final SingleEvaluator singleEvaluator;
   private final BulkEvaluator bulkEvaluator;
 
   private final int numThreads;
+  /**
+   * Executor to evaluate genotypes on, kept across generations. Created on first use if not given
+   */
+  private Executor evaluationExecutor = null;
+  /**
+   * Whether evaluationExecutor was created by, and so must be shut down by, this object
+   */
+  private boolean ownsEvaluationExecutor = false;
   private final int populationSize;
   private final int targetNumSpecies;
   private final InnovationGenerator innovationGenerator;
+  /**
+   * Structural mutations made in the generation being bred
+   */
+  private final InnovationRegistry innovationRegistry;
+  private final NeuronRegistry neuronRegistry;
 
   private final List<Species> allSpecies;
   private List<NetworkGenotype> currentGeneration;
@@ -46,11 +79,16 @@ public class Evolution implements ProtoEquivalent {
   private boolean verbose = false;
   private int generationNumber;
 
-  private final Map<NetworkGenotype, Species> genotypeSpeciesMap;
+  /*
+    Per-generation stats, indexed by each genotype's slot in currentGeneration. During evaluation
+    each worker writes only its own slot
+   */
+  private Species[] slotSpecies;
+  private double[] fitnesses;
   /**
-   * Map from network genotypes to their adjusted fitness
+   * Fitnesses adjusted by species size
    */
-  private final Map<NetworkGenotype, Double> genotypeFitnessMap;
+  private double[] adjustedFitnesses;
 
   /**
    * Construct a new Evolution object with single evaluator
@@ -95,20 +133,22 @@ public class Evolution implements ProtoEquivalent {
     this.generationNumber = 0;
     this.targetNumSpecies = targetNumSpecies;
     this.innovationGenerator = innovationGenerator;
+    this.innovationRegistry = new InnovationRegistry(innovationGenerator);
     this.singleEvaluator = singleEvaluator;
     this.bulkEvaluator = bulkEvaluator;
     this.numThreads = numThreads;
     this.compatibilityDistanceThreshold = INITIAL_COMPATIBILITY_DISTANCE_THRESHOLD;
 
-    // Initialise population
+    // Initialise population, sharing the genes of one private copy of the starting genotype
+    this.neuronRegistry = new NeuronRegistry();
+    final NetworkGenotype initialGenotype = new NetworkGenotype(startingGenotype);
+    initialGenotype.internNeurons(neuronRegistry);
     currentGeneration = new ArrayList<>(populationSize);
     for (int i = 0; i < populationSize; i++) {
-      currentGeneration.add(new NetworkGenotype(startingGenotype));
+      currentGeneration.add(NetworkGenotype.copyOnWrite(initialGenotype));
     }
 
     // Initialise empty stats
-    genotypeSpeciesMap = new HashMap<>();
-    genotypeFitnessMap = new HashMap<>();
     allSpecies = new ArrayList<>();
   }
 
@@ -146,19 +186,22 @@ public class Evolution implements ProtoEquivalent {
     this.generationNumber = protoEvolution.getGenerationNumber();
     this.targetNumSpecies = targetNumSpecies;
     this.innovationGenerator = new InnovationGenerator(protoEvolution.getCurrentInnovationMarker());
+    this.innovationRegistry = new InnovationRegistry(innovationGenerator);
     this.singleEvaluator = singleEvaluator;
     this.bulkEvaluator = bulkEvaluator;
     this.numThreads = numThreads;
     this.compatibilityDistanceThreshold = protoEvolution.getCompatibilityDistanceThreshold();
 
     // Initialise population
+    this.neuronRegistry = new NeuronRegistry();
     currentGeneration = protoEvolution.getCurrentGenerationList().stream()
         .map(NetworkGenotype::new)
         .collect(Collectors.toList());
+    for (NetworkGenotype genotype : currentGeneration) {
+      genotype.internNeurons(neuronRegistry);
+    }
 
     // Initialise empty stats
-    genotypeSpeciesMap = new HashMap<>();
-    genotypeFitnessMap = new HashMap<>();
     allSpecies = new ArrayList<>();
   }
 
@@ -195,6 +238,77 @@ public class Evolution implements ProtoEquivalent {
     this.verbose = verbose;
   }
 
+  /**
+   * Set the executor that genotypes are evaluated on by a single evaluator. The executor is kept
+   * across generations and is never shut down by this object. By default, a pool of up to
+   * numThreads threads is created on first use. Its threads exit once idle for a while, and the
+   * pool is released by shutdown
+   *
+   * @param executor executor to evaluate genotypes on, or null to restore the default
+   */
+  public void setEvaluationExecutor(Executor executor) {
+    shutdown();
+    this.evaluationExecutor = executor;
+  }
+
+  /**
+   * Evaluate each genotype on its own virtual thread rather than a pool of platform threads. Suits
+   * evaluators that mostly wait, e.g. on an external simulator. Requires Java 21 or later
+   *
+   * @throws UnsupportedOperationException if virtual threads are not available
+   */
+  public void useVirtualThreads() {
+    final ExecutorService executor;
+    try {
+      executor = (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+    }
+    shutdown();
+    this.evaluationExecutor = executor;
+    this.ownsEvaluationExecutor = true;
+  }
+
+  /**
+   * Release the threads of the evaluation executor if it was created by this object. A new one is
+   * created if evolve is called again. Executors given by setEvaluationExecutor are left running
+   */
+  public void shutdown() {
+    if (ownsEvaluationExecutor) {
+      ((ExecutorService) evaluationExecutor).shutdown();
+    }
+    evaluationExecutor = null;
+    ownsEvaluationExecutor = false;
+  }
+
+  /**
+   * Equivalent to shutdown, so that an Evolution can be used in a try-with-resources statement
+   */
+  @Override
+  public void close() {
+    shutdown();
+  }
+
+  private Executor getEvaluationExecutor() {
+    if (evaluationExecutor == null) {
+      // Daemon threads so that an Evolution which is never shut down does not keep the JVM alive.
+      // Idle threads time out, so an abandoned Evolution does not pin its threads either
+      final ThreadPoolExecutor pool = new ThreadPoolExecutor(numThreads, numThreads,
+          EVALUATION_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+          runnable -> {
+            final Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+          });
+      pool.allowCoreThreadTimeOut(true);
+      evaluationExecutor = pool;
+      ownsEvaluationExecutor = true;
+    }
+    return evaluationExecutor;
+  }
+
   /**
    * @return The current number of species in the population
    */
@@ -216,6 +330,25 @@ public class Evolution implements ProtoEquivalent {
     return fittestGenotype;
   }
 
+  /**
+   * @return for each genotype of the last evaluated generation, in order, the position of its
+   *     species among all species
+   */
+  int[] getSpeciesAssignments() {
+    final int[] assignments = new int[slotSpecies.length];
+    for (int g = 0; g < assignments.length; g++) {
+      assignments[g] = allSpecies.indexOf(slotSpecies[g]);
+    }
+    return assignments;
+  }
+
+  /**
+   * @return the population-wide registry of neuron genes
+   */
+  public NeuronRegistry getNeuronRegistry() {
+    return neuronRegistry;
+  }
+
   /**
    * @return the current generation number
    */
@@ -240,15 +373,43 @@ public class Evolution implements ProtoEquivalent {
     // Reset all stats before next generation evaluation
     reset(random);
 
-    // Place genotypes into species
-    for (NetworkGenotype genotype : currentGeneration) {
-      boolean foundSpecies = false;
+    final int numExistingSpecies = allSpecies.size();
+
+    // Match genotypes against the existing species' mascots, which are fixed for the generation,
+    // so every genotype can be matched independently
+    final int[] existingSpecies = new int[currentGeneration.size()];
+    final IntStream slots = IntStream.range(0, currentGeneration.size());
+    (currentGeneration.size() < PARALLEL_SPECIATION_SIZE ? slots : slots.parallel())
+        .forEach(g -> {
+          existingSpecies[g] = -1;
+          for (int s = 0; s < numExistingSpecies; s++) {
+            if (NetworkGenotype.isCompatible(currentGeneration.get(g),
+                allSpecies.get(s).getMascot(), compatibilityDistanceThreshold)) {
+              existingSpecies[g] = s;
+              break;
+            }
+          }
+        });
+
+    // Place genotypes into species in order, so that new species are created exactly as if every
+    // genotype had been matched one at a time
+    for (int g = 0; g < currentGeneration.size(); g++) {
+      final NetworkGenotype genotype = currentGeneration.get(g);
+      if (existingSpecies[g] >= 0) {
+        final Species species = allSpecies.get(existingSpecies[g]);
+        species.addMember(genotype);
+        slotSpecies[g] = species;
+        continue;
+      }
 
-      for (Species species : allSpecies) {
-        if (NetworkGenotype.compatibilityDistance(genotype, species.getMascot())
-            < compatibilityDistanceThreshold) {
+      boolean foundSpecies = false;
+      // Only species created this generation are left to check
+      for (int s = numExistingSpecies; s < allSpecies.size(); s++) {
+        final Species species = allSpecies.get(s);
+        if (NetworkGenotype.isCompatible(genotype, species.getMascot(),
+            compatibilityDistanceThreshold)) {
           species.addMember(genotype);
-          genotypeSpeciesMap.put(genotype, species);
+          slotSpecies[g] = species;
           foundSpecies = true;
           break;
         }
@@ -257,7 +418,7 @@ public class Evolution implements ProtoEquivalent {
         // No new species found - create a new species
         Species newSpecies = new Species(genotype);
         allSpecies.add(newSpecies);
-        genotypeSpeciesMap.put(genotype, newSpecies);
+        slotSpecies[g] = newSpecies;
       }
     }
 
@@ -277,65 +438,55 @@ public class Evolution implements ProtoEquivalent {
 
     // Evaluate each genotype and assign its fitness
     if (singleEvaluator != null) {
-      final ExecutorService threadPool = Executors.newFixedThreadPool(numThreads);
-      final Lock criticalLock = new ReentrantLock();
-      for (NetworkGenotype genotype : currentGeneration) {
-        threadPool.execute(() -> {
-
-          // Simulate the genotype and evaluate fitness
-          final double fitness = singleEvaluator.evaluate(genotype);
-
-          // Read-only
-          Species genotypesSpecies = genotypeSpeciesMap.get(genotype);
-
-          // Adjust fitness by species size to prevent elitism. genotypeSpecies.size() is read-only
-          final double adjustedFitness = fitness / ((double) genotypesSpecies.size());
-
-          // Critical section
-          criticalLock.lock();
-          genotypeFitnessMap.put(genotype, adjustedFitness);
-
-          // Store highest fitness
-          if (fitness > highestFitness) {
-            highestFitness = fitness;
-            fittestGenotype = genotype;
+      final Executor executor = getEvaluationExecutor();
+      final CountDownLatch remaining = new CountDownLatch(currentGeneration.size());
+      final AtomicReference<Throwable> failure = new AtomicReference<>();
+      for (int g = 0; g < currentGeneration.size(); g++) {
+        final int slot = g;
+        executor.execute(() -> {
+          try {
+            // Simulate the genotype and evaluate fitness
+            recordFitness(slot, singleEvaluator.evaluate(currentGeneration.get(slot)));
+          } catch (Throwable e) {
+            // Caught on the worker so that an Error cannot leave the slot without a fitness
+            failure.compareAndSet(null, e);
+          } finally {
+            remaining.countDown();
           }
-          criticalLock.unlock();
         });
       }
 
-      // Accept no more tasks
-      threadPool.shutdown();
-      // Wait until thread pool execution is finished
+      // Wait until every genotype is evaluated. The executor is kept for the next generation
       try {
-        threadPool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        remaining.await();
       } catch (InterruptedException e) {
-        System.err.println("Waiting for thread pool execution to finish, outlasted the universe");
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for evaluation to finish", e);
+      }
+      final Throwable cause = failure.get();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      } else if (cause != null) {
+        throw new RuntimeException("Evaluation failed", cause);
       }
     } else if (bulkEvaluator != null) {
-      List<Double> fitnesses = bulkEvaluator.evaluate(currentGeneration);
+      List<Double> bulkFitnesses = bulkEvaluator.evaluate(currentGeneration);
       // N.B: assuming fitnesses in same order as currentGeneration
-      for (int i = 0; i < currentGeneration.size(); i++) {
-        NetworkGenotype genotype = currentGeneration.get(i);
-        double fitness = fitnesses.get(i);
-
-        Species genotypesSpecies = genotypeSpeciesMap.get(genotype);
-
-        // Adjust fitness by species size to prevent elitism.
-        final double adjustedFitness = fitness / ((double) genotypesSpecies.size());
-
-        genotypeFitnessMap.put(genotype, adjustedFitness);
-
-        // Store highest fitness
-        if (fitness > highestFitness) {
-          highestFitness = fitness;
-          fittestGenotype = genotype;
-        }
+      for (int g = 0; g < currentGeneration.size(); g++) {
+        recordFitness(g, bulkFitnesses.get(g));
       }
     } else {
       throw new RuntimeException("Both single and bulk evaluators are undefined");
     }
 
+    // Store highest fitness. The first fittest genotype wins ties, however evaluation was scheduled
+    for (int g = 0; g < currentGeneration.size(); g++) {
+      if (fitnesses[g] > highestFitness) {
+        highestFitness = fitnesses[g];
+        fittestGenotype = currentGeneration.get(g);
+      }
+    }
+
     // Report generation statistics
     if (verbose) {
       System.out.println("Highest fitness: " + getHighestFitness());
@@ -345,69 +496,127 @@ public class Evolution implements ProtoEquivalent {
     // Sort all species
     // Sort all members within each species
 
-    // List of all species ordered by their total (size adjusted (averaged)) fitness (descending)
-    final List<Species> sortedSpecies = new ArrayList<>(allSpecies);
-    // Map from each species to a sorted List of members, sorted by their individual fitness (descending)
-    final Map<Species, List<NetworkGenotype>> sortedSpeciesMembers = new HashMap<>();
-
+    // Map from each species to its members' slots, sorted by their individual fitness (descending)
+    final Map<Species, List<Integer>> sortedSpeciesMembers = new HashMap<>();
     for (Species species : allSpecies) {
-      List<NetworkGenotype> sortedMembers = new ArrayList<>(species.getMembers());
-      sortedMembers.sort((o1, o2) -> -1 * Double.compare(genotypeFitnessMap.get(o1),
-          genotypeFitnessMap.get(o2)));
-      sortedSpeciesMembers.put(species, sortedMembers);
+      sortedSpeciesMembers.put(species, new ArrayList<>(species.size()));
     }
-    sortedSpecies.sort((species1, species2) -> {
-      double totalSpecies1Fitness = species1.getMembers().stream()
-          .mapToDouble(genotypeFitnessMap::get)
-          .sum();
-
-      double totalSpecies2Fitness = species2.getMembers().stream()
-          .mapToDouble(genotypeFitnessMap::get)
+    for (int g = 0; g < currentGeneration.size(); g++) {
+      sortedSpeciesMembers.get(slotSpecies[g]).add(g);
+    }
+    // Total (size adjusted (averaged)) fitness of each species, summed in member order.
+    // DoubleStream.sum is compensated, so the sums do not drift with the number of members
+    final Map<Species, Double> speciesSums = new HashMap<>();
+    for (Species species : allSpecies) {
+      final double speciesSum = sortedSpeciesMembers.get(species).stream()
+          .mapToDouble(slot -> adjustedFitnesses[slot])
           .sum();
+      speciesSums.put(species, speciesSum);
+      sortedSpeciesMembers.get(species).sort(
+          (o1, o2) -> -1 * Double.compare(adjustedFitnesses[o1], adjustedFitnesses[o2]));
+    }
 
-      return -1 * Double.compare(totalSpecies1Fitness, totalSpecies2Fitness);
-    });
+    // List of all species ordered by their total (size adjusted (averaged)) fitness (descending)
+    final List<Species> sortedSpecies = new ArrayList<>(allSpecies);
+    sortedSpecies.sort((species1, species2) ->
+        -1 * Double.compare(speciesSums.get(species1), speciesSums.get(species2)));
+
+    // Selection distributions, built once so that breeding each child does not re-sum fitnesses.
+    // Species are chosen biased by their total fitness and members by their individual fitness
+    final double[] sortedSpeciesSums = new double[sortedSpecies.size()];
+    final Map<Species, CumulativeDistribution> memberDistributions = new HashMap<>();
+    for (int s = 0; s < sortedSpecies.size(); s++) {
+      final Species species = sortedSpecies.get(s);
+      sortedSpeciesSums[s] = speciesSums.get(species);
+
+      final List<Integer> sortedMembers = sortedSpeciesMembers.get(species);
+      final double[] memberFitnesses = new double[sortedMembers.size()];
+      for (int m = 0; m < memberFitnesses.length; m++) {
+        memberFitnesses[m] = adjustedFitnesses[sortedMembers.get(m)];
+      }
+      memberDistributions.put(species, new CumulativeDistribution(memberFitnesses));
+    }
+    final CumulativeDistribution speciesDistribution
+        = new CumulativeDistribution(sortedSpeciesSums);
 
-    // Create next generation
+    // Create next generation. Identical structural mutations within it share innovations
     List<NetworkGenotype> nextGeneration = new ArrayList<>(populationSize);
+    innovationRegistry.clear();
 
     /*
       Add fittest in each species to next generation
       This ensures that the next generation is at least as good as the current
      */
     for (Species species : allSpecies) {
-      nextGeneration.add(sortedSpeciesMembers.get(species).get(0));
+      nextGeneration.add(currentGeneration.get(sortedSpeciesMembers.get(species).get(0)));
     }
 
-    // Breed genotypes to fill population size
-    while (nextGeneration.size() < populationSize) {
-      // Pick a species at weighted random
-      Species chosenSpecies = getRandomSpeciesBiasedByFitness(random, sortedSpecies);
-
-      // Pick two members from the species to be parents
-      NetworkGenotype parent1 = getRandomMemberBiasedByFitness(random,
-          sortedSpeciesMembers.get(chosenSpecies));
-      NetworkGenotype parent2 = getRandomMemberBiasedByFitness(random,
-          sortedSpeciesMembers.get(chosenSpecies));
-
-      boolean parent1Fittest = genotypeFitnessMap.get(parent1) > genotypeFitnessMap.get(parent2);
-
-      // Generate child as crossover of parents
-      NetworkGenotype child = NetworkGenotype.crossover(
-          parent1Fittest ? parent1 : parent2,
-          parent1Fittest ? parent2 : parent1,
-          random
-      );
-
-      // Mutate child
-      if (random.nextDouble() < WEIGHT_MUTATION_RATE) {
-        child.weightMutation(random);
-      }
-      if (random.nextDouble() < ADD_CONNECTION_MUTATION_RATE) {
-        child.addConnectionMutation(random, innovationGenerator, ADD_CONNECTION_ATTEMPTS);
+    /*
+      Breed genotypes to fill population size. Each child has its own random stream, split from the
+      generation's in slot order, so children can be bred on any number of threads with the same
+      results. Structural mutations take innovation markers and neuron uids from shared counters,
+      so they are applied afterwards in slot order
+     */
+    final int numChildren = Math.max(0, populationSize - nextGeneration.size());
+    final SplittableRandom generationRandom = new SplittableRandom(random.nextLong());
+    final Random[] childRandoms = new Random[numChildren];
+    for (int c = 0; c < numChildren; c++) {
+      childRandoms[c] = new Random(generationRandom.split().nextLong());
+    }
+    final NetworkGenotype[] children = new NetworkGenotype[numChildren];
+    final boolean[] addsConnection = new boolean[numChildren];
+    final boolean[] addsNeuron = new boolean[numChildren];
+
+    final IntStream childSlots = IntStream.range(0, numChildren);
+    (numChildren < PARALLEL_REPRODUCTION_SIZE ? childSlots : childSlots.parallel())
+        .forEach(c -> {
+          final Random childRandom = childRandoms[c];
+
+          // Pick a species at weighted random
+          final Species chosenSpecies
+              = sortedSpecies.get(speciesDistribution.sample(childRandom));
+
+          // Pick two members from the species to be parents, at weighted random
+          final List<Integer> members = sortedSpeciesMembers.get(chosenSpecies);
+          final CumulativeDistribution memberDistribution = memberDistributions.get(chosenSpecies);
+          final int parent1Slot = members.get(memberDistribution.sample(childRandom));
+          final int parent2Slot = members.get(memberDistribution.sample(childRandom));
+          NetworkGenotype parent1 = currentGeneration.get(parent1Slot);
+          NetworkGenotype parent2 = currentGeneration.get(parent2Slot);
+
+          boolean parent1Fittest
+              = adjustedFitnesses[parent1Slot] > adjustedFitnesses[parent2Slot];
+
+          // Generate child as crossover of parents
+          NetworkGenotype child = NetworkGenotype.crossover(
+              parent1Fittest ? parent1 : parent2,
+              parent1Fittest ? parent2 : parent1,
+              childRandom
+          );
+
+          // Mutate child weights and choose its structural mutations
+          if (childRandom.nextDouble() < WEIGHT_MUTATION_RATE) {
+            child.weightMutation(childRandom);
+          }
+          addsConnection[c] = childRandom.nextDouble() < ADD_CONNECTION_MUTATION_RATE;
+          addsNeuron[c] = childRandom.nextDouble() < ADD_NEURON_MUTATION_RATE;
+          if (addsConnection[c]) {
+            // Leave only the cheap incremental checks to the sequential pass
+            child.buildIndexes();
+          }
+
+          children[c] = child;
+        });
+
+    for (int c = 0; c < numChildren; c++) {
+      final NetworkGenotype child = children[c];
+      if (addsConnection[c]) {
+        child.addConnectionMutation(childRandoms[c], innovationRegistry, ADD_CONNECTION_ATTEMPTS);
       }
-      if (random.nextDouble() < ADD_NEURON_MUTATION_RATE) {
-        child.addNeuronMutation(random, innovationGenerator);
+      if (addsNeuron[c]) {
+        child.addNeuronMutation(childRandoms[c], innovationRegistry);
+        // Register the new neuron. Inherited neurons are already shared with the parent
+        child.internNeurons(neuronRegistry);
       }
 
       nextGeneration.add(child);
@@ -415,74 +624,25 @@ public class Evolution implements ProtoEquivalent {
 
     // Switch to next generation
     currentGeneration = nextGeneration;
+    neuronRegistry.removeUnreferenced(currentGeneration);
   }
 
   /**
-   * Randomly select a species biased on the species total (size adjusted) fitness
-   *
-   * @param random        seeded Random object
-   * @param sortedSpecies List of all species ordered by their total (size adjusted (averaged))
-   *                      fitness (descending)
-   * @return selected Species
-   */
-  private Species getRandomSpeciesBiasedByFitness(Random random,
-      List<Species> sortedSpecies) {
-    final double target = random.nextDouble();
-
-    double totalOfAllSums = 0;
-
-    final Map<Species, Double> speciesSums = new HashMap<>();
-    for (Species species : allSpecies) {
-      final double speciesSum = species.getMembers().stream()
-          .mapToDouble(genotypeFitnessMap::get)
-          .sum();
-
-      speciesSums.put(species, speciesSum);
-      totalOfAllSums += speciesSum;
-    }
-
-    double acc = 0;
-    for (Species species : sortedSpecies) {
-      acc += speciesSums.get(species) / totalOfAllSums;
-      if (acc > target) {
-        return species;
-      }
-    }
-
-    // Should never fall through to here, but if so return the last element
-    return sortedSpecies.get(sortedSpecies.size() - 1);
-  }
-
-  /**
-   * Randomly select a member biased on the member's fitness
+   * Record the fitness of the genotype in a slot. Only writes to the slot itself, so may be called
+   * concurrently for different slots
    *
-   * @param random        seeded Random object
-   * @param sortedMembers List of all members ordered by their individual fitness (descending)
-   * @return selected member
+   * @param slot    slot of the genotype in the current generation
+   * @param fitness fitness of the genotype
    */
-  private NetworkGenotype getRandomMemberBiasedByFitness(Random random,
-      List<NetworkGenotype> sortedMembers) {
-    final double target = random.nextDouble();
-
-    final double total = sortedMembers.stream()
-        .mapToDouble(genotypeFitnessMap::get)
-        .sum();
-
-    double acc = 0;
-    for (NetworkGenotype member : sortedMembers) {
-      acc += genotypeFitnessMap.get(member) / total;
-      if (acc > target) {
-        return member;
-      }
-    }
-
-    // Should never fall through to here, but if so return the last element
-    return sortedMembers.get(sortedMembers.size() - 1);
+  private void recordFitness(int slot, double fitness) {
+    fitnesses[slot] = fitness;
+    // Adjust fitness by species size to prevent elitism. Species sizes are read-only here
+    adjustedFitnesses[slot] = fitness / ((double) slotSpecies[slot].size());
   }
 
   /**
-   * Resets each species, genotype-fitness and genotype-species maps, highest fitness and fittest
-   * genotype. Does NOT empty the current population/generation
+   * Resets each species, per-slot stats, highest fitness and fittest genotype. Does NOT empty the
+   * current population/generation
    *
    * @param random seeded Random object
    */
@@ -490,8 +650,16 @@ public class Evolution implements ProtoEquivalent {
     for (Species s : allSpecies) {
       s.reset(random);
     }
-    genotypeSpeciesMap.clear();
-    genotypeFitnessMap.clear();
+    final int size = currentGeneration.size();
+    if (fitnesses == null || fitnesses.length != size) {
+      slotSpecies = new Species[size];
+      fitnesses = new double[size];
+      adjustedFitnesses = new double[size];
+    } else {
+      Arrays.fill(slotSpecies, null);
+      Arrays.fill(fitnesses, 0);
+      Arrays.fill(adjustedFitnesses, 0);
+    }
     highestFitness = Double.MIN_VALUE;
     fittestGenotype = null;
   }
@@ -0,0 +1,116 @@
+package jwblangley.neat.evolution;
+
+import java.util.HashMap;
+import java.util.Map;
+import jwblangley.neat.genotype.ConnectionIndex;
+import jwblangley.neat.genotype.NeuronGenotype;
+import jwblangley.neat.genotype.NeuronLayer;
+
+/**
+ * Registry of the structural mutations made since it was last cleared, so that identical mutations
+ * made independently by different genotypes (typically within one generation) are given the same
+ * innovation markers and neurons. This keeps innovation markers dense and stops duplicate genes
+ * from counting as disjoint. Thread safe
+ */
+public class InnovationRegistry {
+
+  private final InnovationGenerator innovation;
+
+  /**
+   * Innovation markers of added connections, keyed by ConnectionIndex.key of their neurons
+   */
+  private final Map<Long, Integer> connections = new HashMap<>();
+  /**
+   * Splits of connections, keyed by the innovation marker of the split connection
+   */
+  private final Map<Integer, NeuronSplit> splits = new HashMap<>();
+
+  /**
+   * Construct a new (empty) InnovationRegistry
+   *
+   * @param innovation generator for new innovation markers
+   */
+  public InnovationRegistry(InnovationGenerator innovation) {
+    this.innovation = innovation;
+  }
+
+  /**
+   * @return a new innovation marker, not shared with any registered mutation
+   */
+  public synchronized int next() {
+    return innovation.next();
+  }
+
+  /**
+   * @param neuronFrom uid of the neuron the added connection is from
+   * @param neuronTo   uid of the neuron the added connection is to
+   * @return the innovation marker for a new connection between the two neurons
+   */
+  public synchronized int connectionInnovation(int neuronFrom, int neuronTo) {
+    return connections.computeIfAbsent(
+        ConnectionIndex.key(neuronFrom, neuronTo), key -> innovation.next());
+  }
+
+  /**
+   * @param splitInnovationMarker innovation marker of the connection being split
+   * @return the neuron and innovation markers for splitting the connection
+   */
+  public synchronized NeuronSplit neuronSplit(int splitInnovationMarker) {
+    return splits.computeIfAbsent(splitInnovationMarker, marker -> newNeuronSplit());
+  }
+
+  /**
+   * @return a new neuron and innovation markers for splitting a connection, not shared with any
+   *     registered mutation
+   */
+  public synchronized NeuronSplit newNeuronSplit() {
+    return new NeuronSplit(new NeuronGenotype(NeuronLayer.HIDDEN), innovation.next(),
+        innovation.next());
+  }
+
+  /**
+   * Forget all registered mutations, e.g. at the start of a generation. Innovation markers already
+   * handed out are never reused
+   */
+  public synchronized void clear() {
+    connections.clear();
+    splits.clear();
+  }
+
+  /**
+   * Neuron and innovation markers for the result of splitting a connection
+   */
+  public static class NeuronSplit {
+
+    private final NeuronGenotype neuron;
+    private final int fromInnovationMarker;
+    private final int toInnovationMarker;
+
+    private NeuronSplit(NeuronGenotype neuron, int fromInnovationMarker, int toInnovationMarker) {
+      this.neuron = neuron;
+      this.fromInnovationMarker = fromInnovationMarker;
+      this.toInnovationMarker = toInnovationMarker;
+    }
+
+    /**
+     * @return the neuron created between the two ends of the split connection
+     */
+    public NeuronGenotype getNeuron() {
+      return neuron;
+    }
+
+    /**
+     * @return the innovation marker of the connection into the new neuron
+     */
+    public int getFromInnovationMarker() {
+      return fromInnovationMarker;
+    }
+
+    /**
+     * @return the innovation marker of the connection out of the new neuron
+     */
+    public int getToInnovationMarker() {
+      return toInnovationMarker;
+    }
+  }
+}
@@ -15,6 +15,11 @@ public class ConnectionGenotype implements ProtoEquivalent {
 
   private double weight;
   private boolean enabled;
+  /**
+   * Whether this gene may be referenced by more than one genotype. Shared genes must not be
+   * modified: genotypes copy them before mutating
+   */
+  private boolean shared = false;
 
   /**
    * Construct a new ConnectionGenotype
@@ -112,18 +117,54 @@ public class ConnectionGenotype implements ProtoEquivalent {
     return enabled;
   }
 
+  /**
+   * @param weight new weight
+   * @throws IllegalStateException if the gene is shared
+   */
   public void setWeight(double weight) {
+    checkNotShared();
     this.weight = weight;
   }
 
+  /**
+   * @throws IllegalStateException if the gene is shared
+   */
   public void enable() {
+    checkNotShared();
     this.enabled = true;
   }
 
+  /**
+   * @throws IllegalStateException if the gene is shared
+   */
   public void disable() {
+    checkNotShared();
     this.enabled = false;
   }
 
+  /**
+   * @return whether this gene may be referenced by more than one genotype, in which case it must
+   * not be modified
+   */
+  public boolean isShared() {
+    return shared;
+  }
+
+  /**
+   * Mark this gene as referenced by more than one genotype. A gene remains shared for the rest of
+   * its lifetime
+   */
+  void markShared() {
+    shared = true;
+  }
+
+  private void checkNotShared() {
+    if (shared) {
+      throw new IllegalStateException(
+          "Shared genes must not be modified. Use NetworkGenotype.getModifiableConnection");
+    }
+  }
+
   @Override
   public boolean equals(Object other) {
     if (this == other) {
@@ -0,0 +1,134 @@
+package jwblangley.neat.genotype;
+
+import java.util.List;
+
+/**
+ * Hash index of connections by the pair of neurons they connect, with both uids packed into a
+ * single primitive long key. Lookups do not allocate
+ */
+public class ConnectionIndex {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private long[] keys;
+  private ConnectionGenotype[] values;
+  private int size;
+
+  /**
+   * Construct a new (empty) ConnectionIndex
+   */
+  public ConnectionIndex() {
+    keys = new long[INITIAL_CAPACITY];
+    values = new ConnectionGenotype[INITIAL_CAPACITY];
+    size = 0;
+  }
+
+  /**
+   * Construct a new ConnectionIndex of the given connections
+   *
+   * @param connections connections to index
+   */
+  public ConnectionIndex(List<ConnectionGenotype> connections) {
+    this();
+    for (ConnectionGenotype connection : connections) {
+      add(connection);
+    }
+  }
+
+  /**
+   * Pack a pair of neuron uids into a single key
+   *
+   * @param neuronFrom uid of the neuron the connection is from
+   * @param neuronTo   uid of the neuron the connection is to
+   * @return key unique to the (ordered) pair
+   */
+  public static long key(int neuronFrom, int neuronTo) {
+    return ((long) neuronFrom << 32) | (neuronTo & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Add a connection to the index. If a connection between the same two neurons is already indexed,
+   * the one with the lower innovation marker is kept, i.e. the first in a genotype's connections. A
+   * connection with the same innovation marker replaces the indexed one
+   *
+   * @param connection connection to add
+   */
+  public void add(ConnectionGenotype connection) {
+    if ((size + 1) * 2 > keys.length) {
+      resize(keys.length * 2);
+    }
+
+    final long key = key(connection.getNeuronFrom(), connection.getNeuronTo());
+    int slot = slot(key);
+    while (values[slot] != null) {
+      if (keys[slot] == key) {
+        if (connection.getInnovationMarker() <= values[slot].getInnovationMarker()) {
+          values[slot] = connection;
+        }
+        return;
+      }
+      slot = (slot + 1) & (keys.length - 1);
+    }
+
+    keys[slot] = key;
+    values[slot] = connection;
+    size++;
+  }
+
+  /**
+   * @param neuronFrom uid of the neuron the connection is from
+   * @param neuronTo   uid of the neuron the connection is to
+   * @return the indexed connection between the two neurons, or null if there is none
+   */
+  public ConnectionGenotype get(int neuronFrom, int neuronTo) {
+    final long key = key(neuronFrom, neuronTo);
+    int slot = slot(key);
+    while (values[slot] != null) {
+      if (keys[slot] == key) {
+        return values[slot];
+      }
+      slot = (slot + 1) & (keys.length - 1);
+    }
+    return null;
+  }
+
+  /**
+   * @param neuronFrom uid of the neuron the connection is from
+   * @param neuronTo   uid of the neuron the connection is to
+   * @return whether a connection between the two neurons is indexed
+   */
+  public boolean contains(int neuronFrom, int neuronTo) {
+    return get(neuronFrom, neuronTo) != null;
+  }
+
+  /**
+   * @return the number of distinct neuron pairs indexed
+   */
+  public int size() {
+    return size;
+  }
+
+  private int slot(long key) {
+    // Fibonacci hashing spreads the packed uids across the table
+    final long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash >>> (64 - Integer.numberOfTrailingZeros(keys.length)));
+  }
+
+  private void resize(int capacity) {
+    final long[] oldKeys = keys;
+    final ConnectionGenotype[] oldValues = values;
+    keys = new long[capacity];
+    values = new ConnectionGenotype[capacity];
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldValues[i] != null) {
+        int slot = slot(oldKeys[i]);
+        while (values[slot] != null) {
+          slot = (slot + 1) & (capacity - 1);
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+}
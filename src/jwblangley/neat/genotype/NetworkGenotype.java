@@ -1,6 +1,8 @@
 package jwblangley.neat.genotype;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -9,13 +11,17 @@ import java.util.Set;
 import java.util.Stack;
 import java.util.stream.Collectors;
 import jwblangley.neat.evolution.InnovationGenerator;
+import jwblangley.neat.evolution.InnovationRegistry;
+import jwblangley.neat.evolution.InnovationRegistry.NeuronSplit;
 import jwblangley.neat.proto.Genotypes;
 import jwblangley.neat.proto.ProtoEquivalent;
-import jwblangley.neat.util.DisjointExcess;
-import jwblangley.neat.util.ImmutableHomogeneousPair;
+import jwblangley.neat.util.GeneAlignment;
 
 /**
- * Genotype representing a neural network
+ * Genotype representing a neural network. Connections are kept sorted by innovation marker, so
+ * genes can be matched between genotypes with a single linear merge. Genes may be shared with other
+ * genotypes (see copyOnWrite and crossover): shared connections are copied by the mutation methods
+ * before they are modified, and must not be modified directly
  */
 public class NetworkGenotype implements ProtoEquivalent {
 
@@ -41,8 +47,27 @@ public class NetworkGenotype implements ProtoEquivalent {
    */
   private static final double W_PROB_PERTURB = 0.9;
 
+  private static final Comparator<ConnectionGenotype> INNOVATION_ORDER
+      = Comparator.comparingInt(ConnectionGenotype::getInnovationMarker);
+  private static final Comparator<NeuronGenotype> UID_ORDER
+      = Comparator.comparingInt(NeuronGenotype::getUid);
+
+  /**
+   * Neurons in ascending uid order
+   */
   private final List<NeuronGenotype> neurons;
+  /**
+   * Connections in ascending innovation marker order
+   */
   private final List<ConnectionGenotype> connections;
+  /**
+   * Built on first use by circularIfConnected, then maintained as neurons and connections are added
+   */
+  private TopologicalOrder topologicalOrder;
+  /**
+   * Built on first use, then maintained as connections are added
+   */
+  private ConnectionIndex connectionIndex;
 
   /**
    * Construct a new (blank) NetworkGenotype
@@ -66,6 +91,24 @@ public class NetworkGenotype implements ProtoEquivalent {
         .collect(Collectors.toList());
   }
 
+  /**
+   * Create a new NetworkGenotype equal to toShare that shares its genes rather than copying them.
+   * Neuron genes are immutable; connection genes are copied by either genotype only when a mutation
+   * modifies them
+   *
+   * @param toShare NetworkGenotype to share genes with
+   * @return the new NetworkGenotype
+   */
+  public static NetworkGenotype copyOnWrite(NetworkGenotype toShare) {
+    NetworkGenotype copy = new NetworkGenotype();
+    copy.neurons.addAll(toShare.neurons);
+    for (ConnectionGenotype connection : toShare.connections) {
+      connection.markShared();
+    }
+    copy.connections.addAll(toShare.connections);
+    return copy;
+  }
+
   /**
    * Create a new NeuronGenotype from a protobuf object
    *
@@ -74,9 +117,11 @@ public class NetworkGenotype implements ProtoEquivalent {
   public NetworkGenotype(Genotypes.NetworkGenotype protoNetwork) {
     neurons = protoNetwork.getNeuronsList().stream()
         .map(NeuronGenotype::new)
+        .sorted(UID_ORDER)
         .collect(Collectors.toList());
     connections = protoNetwork.getConnectionsList().stream()
         .map(ConnectionGenotype::new)
+        .sorted(INNOVATION_ORDER)
         .collect(Collectors.toList());
   }
 
@@ -101,20 +146,145 @@ public class NetworkGenotype implements ProtoEquivalent {
         .build();
   }
 
+  /**
+   * @return unmodifiable view of the neurons in ascending uid order. Add neurons with addNeuron
+   */
   public List<NeuronGenotype> getNeurons() {
-    return neurons;
+    return Collections.unmodifiableList(neurons);
   }
 
+  /**
+   * @return unmodifiable view of the connections in ascending innovation marker order. Add
+   *     connections with addConnection, and modify them through getModifiableConnection, as they
+   *     may be shared with other genotypes
+   */
   public List<ConnectionGenotype> getConnections() {
-    return connections;
+    return Collections.unmodifiableList(connections);
   }
 
+  /**
+   * Add a neuron, keeping neurons sorted by uid. New neurons have the greatest uid so are usually
+   * appended in constant time
+   *
+   * @param neuron neuron to add
+   */
   public void addNeuron(NeuronGenotype neuron) {
-    neurons.add(neuron);
+    final int size = neurons.size();
+    if (size == 0 || neurons.get(size - 1).getUid() <= neuron.getUid()) {
+      neurons.add(neuron);
+    } else {
+      final int index = Collections.binarySearch(neurons, neuron, UID_ORDER);
+      neurons.add(index < 0 ? -(index + 1) : index + 1, neuron);
+    }
+    if (topologicalOrder != null) {
+      topologicalOrder.addNeuron(neuron.getUid());
+    }
+  }
+
+  /**
+   * Replace this network's neurons with the equal neurons held by a registry, registering any that
+   * are not yet held, so that the whole population shares one NeuronGenotype per uid
+   *
+   * @param registry population-wide neuron registry
+   */
+  public void internNeurons(NeuronRegistry registry) {
+    for (int i = 0; i < neurons.size(); i++) {
+      neurons.set(i, registry.intern(neurons.get(i)));
+    }
   }
 
+  /**
+   * Add a connection, keeping connections sorted by innovation marker. New innovations have the
+   * greatest marker so are usually appended in constant time
+   *
+   * @param connection connection to add
+   */
   public void addConnection(ConnectionGenotype connection) {
-    connections.add(connection);
+    if (connectionIndex != null) {
+      connectionIndex.add(connection);
+    }
+    if (topologicalOrder != null) {
+      topologicalOrder.addConnection(connection.getNeuronFrom(), connection.getNeuronTo());
+    }
+
+    final int size = connections.size();
+    if (size == 0 || connections.get(size - 1).getInnovationMarker()
+        <= connection.getInnovationMarker()) {
+      connections.add(connection);
+      return;
+    }
+
+    final int index = Collections.binarySearch(connections, connection, INNOVATION_ORDER);
+    // Insert after any connection with an equal marker to keep insertion order among equals
+    int insertionPoint = index < 0 ? -(index + 1) : index + 1;
+    while (insertionPoint < size && connections.get(insertionPoint).getInnovationMarker()
+        == connection.getInnovationMarker()) {
+      insertionPoint++;
+    }
+    connections.add(insertionPoint, connection);
+  }
+
+  /**
+   * @return the innovation markers of this network's connections, in ascending order
+   */
+  public int[] getInnovationMarkers() {
+    final int[] innovationMarkers = new int[connections.size()];
+    for (int i = 0; i < innovationMarkers.length; i++) {
+      innovationMarkers[i] = connections.get(i).getInnovationMarker();
+    }
+    return innovationMarkers;
+  }
+
+  /**
+   * @return the weights of this network's connections, in the same order as
+   * getInnovationMarkers()
+   */
+  public double[] getWeights() {
+    final double[] weights = new double[connections.size()];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = connections.get(i).getWeight();
+    }
+    return weights;
+  }
+
+  /**
+   * Get the connection at the given position for modification, first replacing it with a private
+   * copy if it is shared with other genotypes
+   *
+   * @param index position of the connection in getConnections()
+   * @return connection that can be modified in place
+   */
+  public ConnectionGenotype getModifiableConnection(int index) {
+    final ConnectionGenotype connection = connections.get(index);
+    if (!connection.isShared()) {
+      return connection;
+    }
+
+    final ConnectionGenotype copy = new ConnectionGenotype(connection);
+    connections.set(index, copy);
+    if (connectionIndex != null) {
+      connectionIndex.add(copy);
+    }
+    return copy;
+  }
+
+  /**
+   * @param connection a connection in this network
+   * @return position of the connection in connections
+   */
+  private int indexOfConnection(ConnectionGenotype connection) {
+    int index = Collections.binarySearch(connections, connection, INNOVATION_ORDER);
+    assert index >= 0 : "Connection must be in this network";
+
+    // Connections sharing an innovation marker are adjacent
+    while (index > 0 && connections.get(index - 1).getInnovationMarker()
+        == connection.getInnovationMarker()) {
+      index--;
+    }
+    while (connections.get(index) != connection) {
+      index++;
+    }
+    return index;
   }
 
   /**
@@ -125,29 +295,69 @@ public class NetworkGenotype implements ProtoEquivalent {
    * Optional.empty() otherwise
    */
   public Optional<ConnectionGenotype> getConnectionByInnovationMarker(int innovationMarker) {
-    assert connections.stream()
-        .filter(con -> con.getInnovationMarker() == innovationMarker).count() <= 1
-        : "There should be a maximum of 1 connection per innovation marker";
+    // Binary search over the sorted connections
+    int low = 0;
+    int high = connections.size() - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final ConnectionGenotype connection = connections.get(middle);
+      if (connection.getInnovationMarker() < innovationMarker) {
+        low = middle + 1;
+      } else if (connection.getInnovationMarker() > innovationMarker) {
+        high = middle - 1;
+      } else {
+        assert (middle == 0
+            || connections.get(middle - 1).getInnovationMarker() != innovationMarker)
+            && (middle == connections.size() - 1
+            || connections.get(middle + 1).getInnovationMarker() != innovationMarker)
+            : "There should be a maximum of 1 connection per innovation marker";
+        return Optional.of(connection);
+      }
+    }
+    return Optional.empty();
+  }
 
-    return connections.stream()
-        .filter(con -> con.getInnovationMarker() == innovationMarker)
-        .findAny();
+  /**
+   * @return index of this network's connections by the pair of neurons they connect. Kept up to
+   * date as connections are added through addConnection
+   */
+  public ConnectionIndex getConnectionIndex() {
+    if (connectionIndex == null) {
+      connectionIndex = new ConnectionIndex(connections);
+    }
+    return connectionIndex;
   }
 
   /**
-   * @param random seeded Random object
-   * @return a random NeuronGenotype from those in this network
+   * Gets the connection in this network between the two given neurons if it exists
+   *
+   * @param neuronFrom uid of the neuron the connection is from
+   * @param neuronTo   uid of the neuron the connection is to
+   * @return Optional-wrapped ConnectionGenotype between the two neurons if it exists,
+   * Optional.empty() otherwise
    */
-  private NeuronGenotype getRandomNeuron(Random random) {
-    return neurons.get(random.nextInt(neurons.size()));
+  public Optional<ConnectionGenotype> getConnection(int neuronFrom, int neuronTo) {
+    return Optional.ofNullable(getConnectionIndex().get(neuronFrom, neuronTo));
+  }
+
+  /**
+   * Build the indexes that addConnectionMutation uses to find existing connections and detect
+   * cycles, if not already built. They are otherwise built by the first mutation; calling this
+   * first lets the cost be paid elsewhere, e.g. on another thread
+   */
+  public void buildIndexes() {
+    getConnectionIndex();
+    if (topologicalOrder == null) {
+      topologicalOrder = new TopologicalOrder(neurons, connections);
+    }
   }
 
   /**
    * @param random seeded Random object
-   * @return a random ConnectionGenotype from those in this network
+   * @return a random NeuronGenotype from those in this network
    */
-  private ConnectionGenotype getRandomConnection(Random random) {
-    return connections.get(random.nextInt(connections.size()));
+  private NeuronGenotype getRandomNeuron(Random random) {
+    return neurons.get(random.nextInt(neurons.size()));
   }
 
   /**
@@ -169,9 +379,24 @@ public class NetworkGenotype implements ProtoEquivalent {
    */
   public boolean addConnectionMutation(
       Random random, InnovationGenerator innovation, int maxAttempts) {
+    return addConnectionMutation(random, new InnovationRegistry(innovation), maxAttempts);
+  }
+
+  /**
+   * Create a new connection between two randomly chosen existing neurons without creating cycles.
+   * A connection between the same two neurons as one already registered is given the same
+   * innovation marker
+   *
+   * @param random      seeded Random object
+   * @param innovations registry of structural mutations
+   * @param maxAttempts maximum number of attempts at selecting two random compatible neurons to
+   *                    connect
+   * @return whether the connection was successful
+   */
+  public boolean addConnectionMutation(
+      Random random, InnovationRegistry innovations, int maxAttempts) {
 
     int attempts = 0;
-    attempt:
     while (attempts < maxAttempts) {
       attempts++;
 
@@ -188,36 +413,34 @@ public class NetworkGenotype implements ProtoEquivalent {
         continue;
       }
 
+      final boolean reversed = secondNeuron.getLayer().compareTo(firstNeuron.getLayer()) < 0;
+
       // Prevent circular connections
-      if (firstNeuron.equals(secondNeuron)
-          || circularIfConnected(firstNeuron, secondNeuron)) {
+      if (firstNeuron.equals(secondNeuron) || (reversed
+          ? circularIfConnected(secondNeuron, firstNeuron)
+          : circularIfConnected(firstNeuron, secondNeuron))) {
         continue;
       }
 
-      final boolean reversed = secondNeuron.getLayer().compareTo(firstNeuron.getLayer()) < 0;
-
-      // Create new connection
-      ConnectionGenotype connection = new ConnectionGenotype(
-          reversed ? secondNeuron.getUid() : firstNeuron.getUid(),
-          reversed ? firstNeuron.getUid() : secondNeuron.getUid(),
-          innovation.next(),
-          generateRandomWeight(random),
-          true
-      );
+      final int neuronFrom = reversed ? secondNeuron.getUid() : firstNeuron.getUid();
+      final int neuronTo = reversed ? firstNeuron.getUid() : secondNeuron.getUid();
+      final double weight = generateRandomWeight(random);
 
       // If connection already exists, re-enable if disabled, prevent overriding otherwise
-      for (ConnectionGenotype existingConnection : connections) {
-        if (existingConnection.equals(connection)) {
-          if (!existingConnection.isEnabled()) {
-            existingConnection.enable();
-            return true;
-          } else {
-            continue attempt;
-          }
+      final ConnectionGenotype existingConnection = getConnectionIndex().get(neuronFrom, neuronTo);
+      if (existingConnection != null) {
+        if (!existingConnection.isEnabled()) {
+          getModifiableConnection(indexOfConnection(existingConnection)).enable();
+          return true;
+        } else {
+          continue;
         }
       }
 
-      return connections.add(connection);
+      // Only take an innovation marker once the connection is known to be new
+      addConnection(new ConnectionGenotype(neuronFrom, neuronTo,
+          innovations.connectionInnovation(neuronFrom, neuronTo), weight, true));
+      return true;
     }
 
     return false;
@@ -232,31 +455,70 @@ public class NetworkGenotype implements ProtoEquivalent {
    * @param innovation innovation marker generator
    */
   public void addNeuronMutation(Random random, InnovationGenerator innovation) {
-    ConnectionGenotype originalConnection = getRandomConnection(random);
+    addNeuronMutation(random, new InnovationRegistry(innovation));
+  }
+
+  /**
+   * Splits a randomly chosen connection into two new connections, with a new neuron created between
+   * the two. The old connection is disabled. The first new connection has a weight of 1 and the
+   * second inherits the weight of the old connection. Splitting the same connection as a split
+   * already registered reuses its neuron and innovation markers
+   *
+   * @param random      seeded Random object
+   * @param innovations registry of structural mutations
+   */
+  public void addNeuronMutation(Random random, InnovationRegistry innovations) {
+    ConnectionGenotype originalConnection
+        = getModifiableConnection(random.nextInt(connections.size()));
     originalConnection.disable();
 
-    // Create a new neuron with the next available ID
-    NeuronGenotype newNeuron = new NeuronGenotype(NeuronLayer.HIDDEN);
-    neurons.add(newNeuron);
+    NeuronSplit split = innovations.neuronSplit(originalConnection.getInnovationMarker());
+    if (containsNeuron(split.getNeuron().getUid())) {
+      // This network has already split the connection: the repeat is a new innovation
+      split = innovations.newNeuronSplit();
+    }
+    final NeuronGenotype newNeuron = split.getNeuron();
+    addNeuron(newNeuron);
 
     // Create two new connections in place of the original connection
     ConnectionGenotype fromToNew = new ConnectionGenotype(
         originalConnection.getNeuronFrom(),
         newNeuron.getUid(),
-        innovation.next(),
+        split.getFromInnovationMarker(),
         1d,
         true
     );
     ConnectionGenotype newToTo = new ConnectionGenotype(
         newNeuron.getUid(),
         originalConnection.getNeuronTo(),
-        innovation.next(),
+        split.getToInnovationMarker(),
         originalConnection.getWeight(),
         true
     );
 
-    connections.add(fromToNew);
-    connections.add(newToTo);
+    addConnection(fromToNew);
+    addConnection(newToTo);
+  }
+
+  /**
+   * @param uid uid of the neuron
+   * @return whether this network has a neuron with the given uid
+   */
+  private boolean containsNeuron(int uid) {
+    int low = 0;
+    int high = neurons.size() - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int midUid = neurons.get(mid).getUid();
+      if (midUid < uid) {
+        low = mid + 1;
+      } else if (midUid > uid) {
+        high = mid - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -265,7 +527,8 @@ public class NetworkGenotype implements ProtoEquivalent {
    * @param random seeded Random object
    */
   public void weightMutation(Random random) {
-    for (ConnectionGenotype connection : connections) {
+    for (int i = 0; i < connections.size(); i++) {
+      final ConnectionGenotype connection = getModifiableConnection(i);
       if (random.nextDouble() < W_PROB_PERTURB) {
         connection.setWeight(connection.getWeight() * 2 * generateRandomWeight(random));
       } else {
@@ -292,33 +555,42 @@ public class NetworkGenotype implements ProtoEquivalent {
 
     /*
     Since we take matching from either and excess or disjoint always from fittest,
-    we can take a copy of all the fittest parent's neurons to stay connected
+    we can take all the fittest parent's neurons to stay connected
      */
 
-    // Add all neurons from fittest parent to child
+    // Add all neurons from fittest parent to child. Neuron genes are immutable so can be shared
     for (NeuronGenotype parentNeuron : fittestParent.getNeurons()) {
-      childNetwork.addNeuron(new NeuronGenotype(parentNeuron));
+      childNetwork.addNeuron(parentNeuron);
     }
 
-    // Add genes (connections) from parents
+    // Add genes (connections) from parents, merging both sorted lists of genes
+    final List<ConnectionGenotype> secondParentsGenes = secondParent.getConnections();
+    int secondIndex = 0;
     for (ConnectionGenotype fittestParentsGene : fittestParent.getConnections()) {
-      // Get matching gene (if it exists) from second parent
-      Optional<ConnectionGenotype> secondParentsGene
-          = secondParent.getConnectionByInnovationMarker(fittestParentsGene.getInnovationMarker());
+      final int innovationMarker = fittestParentsGene.getInnovationMarker();
+
+      // Skip genes only present in the second parent
+      while (secondIndex < secondParentsGenes.size()
+          && secondParentsGenes.get(secondIndex).getInnovationMarker() < innovationMarker) {
+        secondIndex++;
+      }
 
       ConnectionGenotype toInherit;
-      if (secondParentsGene.isPresent()) {
+      if (secondIndex < secondParentsGenes.size()
+          && secondParentsGenes.get(secondIndex).getInnovationMarker() == innovationMarker) {
         // Matching genes
         // Inherit randomly from either parent
         toInherit = random.nextBoolean()
-            ? fittestParentsGene : secondParentsGene.get();
+            ? fittestParentsGene : secondParentsGenes.get(secondIndex);
       } else {
         // Disjoint or excess gene
         // Always copy from fitter parent
         toInherit = fittestParentsGene;
       }
-      ConnectionGenotype childGene = new ConnectionGenotype(toInherit);
-      childNetwork.addConnection(childGene);
+      // Share the gene with the parent: it is only copied if a mutation modifies it
+      toInherit.markShared();
+      // Genes are visited in order, so this always appends
+      childNetwork.addConnection(toInherit);
     }
 
     return childNetwork;
@@ -334,57 +606,97 @@ public class NetworkGenotype implements ProtoEquivalent {
    * difference between the two genotypes
    */
   public static double compatibilityDistance(NetworkGenotype first, NetworkGenotype second) {
-    List<Integer> firstParentInnovations = first.getConnections().stream()
-        .map(ConnectionGenotype::getInnovationMarker)
-        .collect(Collectors.toList());
-    List<Integer> secondParentInnovations = second.getConnections().stream()
-        .map(ConnectionGenotype::getInnovationMarker)
-        .collect(Collectors.toList());
-
-    ImmutableHomogeneousPair<Integer> disjointExcesses
-        = DisjointExcess.calculate(firstParentInnovations, secondParentInnovations);
-    final int disjoints = disjointExcesses.getFirst();
-    final int excesses = disjointExcesses.getSecond();
-
-    final double avgWeightDiffOfMatching = averageWeightDifferenceOfMatchingGenes(first, second);
+    final GeneAlignment alignment = GeneAlignment.align(
+        first.getInnovationMarkers(), first.getWeights(),
+        second.getInnovationMarkers(), second.getWeights());
 
     int numGenes = Math.max(first.getConnections().size(), second.getConnections().size());
 
-    return DIST_C1 * excesses / ((double) numGenes)
-        + DIST_C2 * disjoints / ((double) numGenes)
-        + DIST_C3 * avgWeightDiffOfMatching;
+    return DIST_C1 * alignment.getExcesses() / ((double) numGenes)
+        + DIST_C2 * alignment.getDisjoints() / ((double) numGenes)
+        + DIST_C3 * alignment.getAverageWeightDifference();
   }
 
-  private static double averageWeightDifferenceOfMatchingGenes(NetworkGenotype first,
-      NetworkGenotype second) {
-
-    double totalDifference = 0;
-    int numMatch = 0;
+  /**
+   * Determine whether compatibilityDistance(first, second) < threshold without necessarily aligning
+   * every gene. The excess and disjoint terms can only grow as the genes are merged, so the
+   * comparison stops as soon as they alone reach the threshold. Genotypes belonging to other
+   * species are usually rejected after only a few genes
+   *
+   * @param first     first NetworkGenotype
+   * @param second    second NetworkGenotype
+   * @param threshold compatibility distance threshold
+   * @return whether the compatibility distance between the two is less than threshold
+   */
+  public static boolean isCompatible(NetworkGenotype first, NetworkGenotype second,
+      double threshold) {
+
+    final List<ConnectionGenotype> firstGenes = first.getConnections();
+    final List<ConnectionGenotype> secondGenes = second.getConnections();
+    final int numGenes = Math.max(firstGenes.size(), secondGenes.size());
+
+    // Margin guarding against rounding differences with the full calculation
+    final double bound = threshold + 2 * Math.ulp(threshold);
+    final double unmatchedCoefficient = Math.min(DIST_C1, DIST_C2) / ((double) numGenes);
+
+    int disjoints = 0;
+    int matching = 0;
+    double totalWeightDifference = 0;
+
+    int i = 0;
+    int j = 0;
+    while (i < firstGenes.size() && j < secondGenes.size()) {
+      final ConnectionGenotype firstGene = firstGenes.get(i);
+      final ConnectionGenotype secondGene = secondGenes.get(j);
+      if (firstGene.getInnovationMarker() == secondGene.getInnovationMarker()) {
+        matching++;
+        totalWeightDifference += Math.abs(firstGene.getWeight() - secondGene.getWeight());
+        i++;
+        j++;
+        continue;
+      }
 
-    for (ConnectionGenotype parent1ConnectionGenotype : first.getConnections()) {
-      Optional<ConnectionGenotype> parent2Connection
-          = second.getConnectionByInnovationMarker(parent1ConnectionGenotype.getInnovationMarker());
+      disjoints++;
+      if (firstGene.getInnovationMarker() < secondGene.getInnovationMarker()) {
+        i++;
+      } else {
+        j++;
+      }
 
-      // Check if second also contains the same gene
-      if (parent2Connection.isPresent()) {
-        // Matching gene
-        numMatch++;
-        totalDifference += Math.abs(
-            parent1ConnectionGenotype.getWeight() - parent2Connection.get().getWeight());
+      // Genes found so far, plus however many the longer remainder has over the shorter, can never
+      // be matched
+      final int unmatchedRemaining
+          = Math.abs((firstGenes.size() - i) - (secondGenes.size() - j));
+      if (unmatchedCoefficient * (disjoints + unmatchedRemaining) >= bound) {
+        return false;
       }
     }
-    return totalDifference / ((double) numMatch);
-  }
 
+    final int excesses = (firstGenes.size() - i) + (secondGenes.size() - j);
+    final double distance = DIST_C1 * excesses / ((double) numGenes)
+        + DIST_C2 * disjoints / ((double) numGenes)
+        + DIST_C3 * (totalWeightDifference / ((double) matching));
+
+    return distance < threshold;
+  }
 
   /**
-   * Checks whether adding a connection will cause cycles
+   * Checks whether adding a connection will cause cycles. Answered from a topological order of the
+   * neurons that is built on first use and kept up to date as neurons and connections are added
    *
    * @param additionalFrom the uid of the neuron which the additional connection would be from
    * @param additionalTo   the uid of the neuron which the additional connection would be to
    * @return whether the additional connection would create cycles
    */
   public boolean circularIfConnected(NeuronGenotype additionalFrom, NeuronGenotype additionalTo) {
+    if (topologicalOrder == null) {
+      topologicalOrder = new TopologicalOrder(neurons, connections);
+    }
+    if (!topologicalOrder.isCyclic()) {
+      return topologicalOrder.circularIfConnected(additionalFrom.getUid(), additionalTo.getUid());
+    }
+
+    // Already cyclic: only report cycles reachable from the inputs
     List<NeuronGenotype> inputs = neurons.stream()
         .filter(n -> n.getLayer() == NeuronLayer.INPUT)
         .collect(Collectors.toList());
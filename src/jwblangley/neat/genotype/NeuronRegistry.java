@@ -0,0 +1,56 @@
+package jwblangley.neat.genotype;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Population-wide table of neuron genes. A neuron's uid always identifies the same neuron (and
+ * layer) across a population, so genotypes can share a single immutable NeuronGenotype per uid
+ * instead of holding their own copies. Thread safe
+ */
+public class NeuronRegistry {
+
+  private final Map<Integer, NeuronGenotype> uidNeuronMap = new ConcurrentHashMap<>();
+
+  /**
+   * Get the registered neuron with the same uid as the given neuron, registering it if there is
+   * none
+   *
+   * @param neuron neuron to intern
+   * @return the registered neuron equal to neuron
+   */
+  public NeuronGenotype intern(NeuronGenotype neuron) {
+    final NeuronGenotype existing = uidNeuronMap.putIfAbsent(neuron.getUid(), neuron);
+    if (existing == null) {
+      return neuron;
+    }
+    assert existing.getLayer() == neuron.getLayer() : "equal neurons should have the same type";
+    return existing;
+  }
+
+  /**
+   * Forget every neuron not used by any of the given genotypes, e.g. those of extinct lineages once
+   * a generation has been replaced. Otherwise the registry only ever grows
+   *
+   * @param genotypes every genotype whose neurons should stay registered
+   */
+  public void removeUnreferenced(Collection<NetworkGenotype> genotypes) {
+    final Set<Integer> referencedUids = new HashSet<>();
+    for (NetworkGenotype genotype : genotypes) {
+      for (NeuronGenotype neuron : genotype.getNeurons()) {
+        referencedUids.add(neuron.getUid());
+      }
+    }
+    uidNeuronMap.keySet().retainAll(referencedUids);
+  }
+
+  /**
+   * @return the number of registered neurons
+   */
+  public int size() {
+    return uidNeuronMap.size();
+  }
+}
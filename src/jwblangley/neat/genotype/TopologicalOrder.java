@@ -0,0 +1,311 @@
+package jwblangley.neat.genotype;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Topological order of a genotype's neurons, maintained incrementally as neurons and connections
+ * are added (Pearce-Kelly dynamic topological ordering), together with an adjacency index of the
+ * connections. Whether a connection would create a cycle is usually answered by comparing two
+ * positions; only connections that go against the current order need a search, bounded to the
+ * neurons positioned between its two ends. Connections are never removed from a genotype (only
+ * disabled), so once a cycle exists the order is abandoned
+ */
+class TopologicalOrder {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private final Map<Integer, Integer> uidNodeMap = new HashMap<>();
+  private int numNodes = 0;
+
+  /**
+   * Position of each node in the topological order. Always a permutation of 0 to numNodes - 1
+   */
+  private int[] positions = new int[INITIAL_CAPACITY];
+  private int[][] successors = new int[INITIAL_CAPACITY][];
+  private int[] numSuccessors = new int[INITIAL_CAPACITY];
+  private int[][] predecessors = new int[INITIAL_CAPACITY][];
+  private int[] numPredecessors = new int[INITIAL_CAPACITY];
+
+  /**
+   * Nodes with visitedMarks[n] == currentMark have been visited by the current search
+   */
+  private int[] visitedMarks = new int[INITIAL_CAPACITY];
+  private int currentMark = 0;
+
+  private boolean cyclic = false;
+
+  /**
+   * Build the topological order of existing neurons and connections
+   *
+   * @param neurons     neurons of the genotype
+   * @param connections connections of the genotype, enabled or not
+   */
+  TopologicalOrder(List<NeuronGenotype> neurons, List<ConnectionGenotype> connections) {
+    for (NeuronGenotype neuron : neurons) {
+      node(neuron.getUid());
+    }
+    for (ConnectionGenotype connection : connections) {
+      addEdge(node(connection.getNeuronFrom()), node(connection.getNeuronTo()));
+    }
+
+    // Kahn's algorithm
+    final int[] inDegrees = Arrays.copyOf(numPredecessors, numNodes);
+    final int[] queue = new int[numNodes];
+    int head = 0;
+    int tail = 0;
+    for (int n = 0; n < numNodes; n++) {
+      if (inDegrees[n] == 0) {
+        queue[tail++] = n;
+      }
+    }
+    while (head < tail) {
+      final int n = queue[head];
+      positions[n] = head++;
+      for (int s = 0; s < numSuccessors[n]; s++) {
+        final int successor = successors[n][s];
+        if (--inDegrees[successor] == 0) {
+          queue[tail++] = successor;
+        }
+      }
+    }
+
+    cyclic = tail < numNodes;
+  }
+
+  /**
+   * @return whether the connections contain a cycle. If so, no order is maintained
+   */
+  boolean isCyclic() {
+    return cyclic;
+  }
+
+  /**
+   * @param uid uid of the added neuron
+   */
+  void addNeuron(int uid) {
+    node(uid);
+  }
+
+  /**
+   * Add a connection, repairing the order if the connection goes against it
+   *
+   * @param fromUid uid of the neuron the connection is from
+   * @param toUid   uid of the neuron the connection is to
+   */
+  void addConnection(int fromUid, int toUid) {
+    final int from = node(fromUid);
+    final int to = node(toUid);
+
+    if (!cyclic && positions[from] >= positions[to]) {
+      if (from == to) {
+        cyclic = true;
+      } else {
+        reorder(from, to);
+      }
+    }
+
+    addEdge(from, to);
+  }
+
+  /**
+   * Check whether adding a connection would create a cycle. Must not be called once cyclic
+   *
+   * @param fromUid uid of the neuron the connection would be from
+   * @param toUid   uid of the neuron the connection would be to
+   * @return whether the connection would create a cycle
+   */
+  boolean circularIfConnected(int fromUid, int toUid) {
+    assert !cyclic : "Order is not maintained for cyclic connections";
+
+    if (fromUid == toUid) {
+      return true;
+    }
+    final Integer from = uidNodeMap.get(fromUid);
+    final Integer to = uidNodeMap.get(toUid);
+    if (from == null || to == null) {
+      // An unknown neuron has no connections so cannot be part of a cycle
+      return false;
+    }
+    if (positions[from] < positions[to]) {
+      return false;
+    }
+
+    // A cycle would need an existing path to -> from, which can only pass through neurons
+    // positioned between the two
+    currentMark++;
+    return reachesForwards(to, from, positions[from], null);
+  }
+
+  /**
+   * Restore the order after adding a connection from -> to where to is currently positioned before
+   * from. Only the neurons between the two are moved
+   */
+  private void reorder(int from, int to) {
+    final int lowerBound = positions[to];
+    final int upperBound = positions[from];
+
+    currentMark++;
+    final IntList forwards = new IntList();
+    if (reachesForwards(to, from, upperBound, forwards)) {
+      cyclic = true;
+      return;
+    }
+    final IntList backwards = new IntList();
+    searchBackwards(from, lowerBound, backwards);
+
+    // Everything reaching from must now precede everything reachable from to, reusing the same
+    // set of positions
+    final int[] backwardNodes = backwards.sortedBy(positions);
+    final int[] forwardNodes = forwards.sortedBy(positions);
+    final int[] freePositions = new int[backwardNodes.length + forwardNodes.length];
+    int p = 0;
+    for (int n : backwardNodes) {
+      freePositions[p++] = positions[n];
+    }
+    for (int n : forwardNodes) {
+      freePositions[p++] = positions[n];
+    }
+    Arrays.sort(freePositions);
+
+    p = 0;
+    for (int n : backwardNodes) {
+      positions[n] = freePositions[p++];
+    }
+    for (int n : forwardNodes) {
+      positions[n] = freePositions[p++];
+    }
+  }
+
+  /**
+   * Depth first search along connections from start, through nodes positioned below upperBound
+   *
+   * @param visited list to collect visited nodes into, or null
+   * @return whether target was reached
+   */
+  private boolean reachesForwards(int start, int target, int upperBound, IntList visited) {
+    final IntList stack = new IntList();
+    stack.add(start);
+    visitedMarks[start] = currentMark;
+    while (stack.size() > 0) {
+      final int n = stack.pop();
+      if (visited != null) {
+        visited.add(n);
+      }
+      for (int s = 0; s < numSuccessors[n]; s++) {
+        final int successor = successors[n][s];
+        if (successor == target) {
+          return true;
+        }
+        if (visitedMarks[successor] != currentMark && positions[successor] < upperBound) {
+          visitedMarks[successor] = currentMark;
+          stack.add(successor);
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Depth first search against connections from start, through nodes positioned above lowerBound
+   *
+   * @param visited list to collect visited nodes into
+   */
+  private void searchBackwards(int start, int lowerBound, IntList visited) {
+    final IntList stack = new IntList();
+    stack.add(start);
+    visitedMarks[start] = currentMark;
+    while (stack.size() > 0) {
+      final int n = stack.pop();
+      visited.add(n);
+      for (int p = 0; p < numPredecessors[n]; p++) {
+        final int predecessor = predecessors[n][p];
+        if (visitedMarks[predecessor] != currentMark && positions[predecessor] > lowerBound) {
+          visitedMarks[predecessor] = currentMark;
+          stack.add(predecessor);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the node for the given uid, appending a new node to the end of the order if needed
+   */
+  private int node(int uid) {
+    final Integer existing = uidNodeMap.get(uid);
+    if (existing != null) {
+      return existing;
+    }
+
+    if (numNodes == positions.length) {
+      final int capacity = numNodes * 2;
+      positions = Arrays.copyOf(positions, capacity);
+      successors = Arrays.copyOf(successors, capacity);
+      numSuccessors = Arrays.copyOf(numSuccessors, capacity);
+      predecessors = Arrays.copyOf(predecessors, capacity);
+      numPredecessors = Arrays.copyOf(numPredecessors, capacity);
+      visitedMarks = Arrays.copyOf(visitedMarks, capacity);
+    }
+
+    final int node = numNodes++;
+    positions[node] = node;
+    successors[node] = new int[2];
+    predecessors[node] = new int[2];
+    uidNodeMap.put(uid, node);
+    return node;
+  }
+
+  private void addEdge(int from, int to) {
+    if (numSuccessors[from] == successors[from].length) {
+      successors[from] = Arrays.copyOf(successors[from], numSuccessors[from] * 2);
+    }
+    successors[from][numSuccessors[from]++] = to;
+
+    if (numPredecessors[to] == predecessors[to].length) {
+      predecessors[to] = Arrays.copyOf(predecessors[to], numPredecessors[to] * 2);
+    }
+    predecessors[to][numPredecessors[to]++] = from;
+  }
+
+  /**
+   * Minimal growable list of primitive ints
+   */
+  private static class IntList {
+
+    private int[] values = new int[16];
+    private int size = 0;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int pop() {
+      return values[--size];
+    }
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * @return the values ordered by their key
+     */
+    int[] sortedBy(int[] keys) {
+      final long[] keyed = new long[size];
+      for (int i = 0; i < size; i++) {
+        keyed[i] = ((long) keys[values[i]] << 32) | values[i];
+      }
+      Arrays.sort(keyed);
+      final int[] sorted = new int[size];
+      for (int i = 0; i < size; i++) {
+        sorted[i] = (int) keyed[i];
+      }
+      return sorted;
+    }
+  }
+}
@@ -1,18 +1,35 @@
 package jwblangley.neat.phenotype;
 
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
 
 /**
- * Enum for available activation functions
+ * Enum for available activation functions. The FAST_ variants are opt-in approximations that trade
+ * a small, bounded error for speed: FAST_SIGMOID is within FAST_SIGMOID_MAX_ERROR of SIGMOID and
+ * FAST_TANH is within FAST_TANH_MAX_ERROR of TANH for all inputs
  */
-public enum Activation implements Function<Double, Double> {
+public enum Activation implements Function<Double, Double>, DoubleUnaryOperator {
   RELU(x -> Math.max(0, x)),
-  SIGMOID(x -> Math.exp(x) / (Math.exp(x) + 1)),
-  LINEAR(Function.identity());
+  SIGMOID(x -> 1d / (1d + Math.exp(-x))),
+  LINEAR(x -> x),
+  TANH(Math::tanh),
+  FAST_SIGMOID(SigmoidTable::sigmoid),
+  // tanh(x) = 2 * sigmoid(2x) - 1
+  FAST_TANH(x -> 2d * SigmoidTable.sigmoid(2d * x) - 1d);
 
-  private final Function<Double, Double> func;
+  /**
+   * Maximum absolute difference between FAST_SIGMOID and SIGMOID
+   */
+  public static final double FAST_SIGMOID_MAX_ERROR = SigmoidTable.MAX_ERROR;
 
-  Activation(Function<Double, Double> func) {
+  /**
+   * Maximum absolute difference between FAST_TANH and TANH
+   */
+  public static final double FAST_TANH_MAX_ERROR = 2 * SigmoidTable.MAX_ERROR;
+
+  private final DoubleUnaryOperator func;
+
+  Activation(DoubleUnaryOperator func) {
     this.func = func;
   }
 
@@ -24,6 +41,17 @@ public enum Activation implements Function<Double, Double> {
    */
   @Override
   public Double apply(Double input) {
-    return func.apply(input);
+    return func.applyAsDouble(input);
+  }
+
+  /**
+   * Applies the activation function to a given primitive input without boxing
+   *
+   * @param input the given input
+   * @return the result
+   */
+  @Override
+  public double applyAsDouble(double input) {
+    return func.applyAsDouble(input);
   }
 }
@@ -0,0 +1,64 @@
+package jwblangley.neat.phenotype;
+
+/**
+ * Arithmetic kernel for batched calculation. The scalar kernel runs on any JVM. A kernel using the
+ * incubating Vector API (jdk.incubator.vector) is compiled separately from src-vector, and is used
+ * instead when it is on the classpath and the module is available (JDK 16+, run with
+ * --add-modules jdk.incubator.vector)
+ */
+interface BatchKernel {
+
+  /**
+   * System property that disables the Vector API kernel when set to false
+   */
+  String VECTOR_PROPERTY = "jwblangley.neat.vector";
+
+  /**
+   * Name of the separately compiled Vector API kernel
+   */
+  String VECTOR_KERNEL_CLASS = "jwblangley.neat.phenotype.VectorBatchKernel";
+
+  /**
+   * Add weight * buffer[sourceRow + s] to sums[s] for every s in [0, length). Results must be
+   * bit-identical to the scalar kernel, so the product and sum are rounded separately (no fused
+   * multiply-add)
+   *
+   * @param buffer    batch buffer to read from
+   * @param sourceRow index of the first element to read from buffer
+   * @param weight    weight to multiply by
+   * @param sums      weighted sums to add to
+   * @param length    number of sums to add to
+   */
+  void multiplyAdd(double[] buffer, int sourceRow, double weight, double[] sums, int length);
+
+  /**
+   * @return the Vector API kernel if it is available and not disabled, otherwise the scalar kernel
+   */
+  static BatchKernel load() {
+    if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))) {
+      return new ScalarBatchKernel();
+    }
+    try {
+      return (BatchKernel) Class.forName(VECTOR_KERNEL_CLASS)
+          .getDeclaredConstructor()
+          .newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // Not compiled in, or jdk.incubator.vector is not available on this JVM
+      return new ScalarBatchKernel();
+    }
+  }
+
+  /**
+   * Plain loop kernel, which the JIT may auto-vectorise
+   */
+  class ScalarBatchKernel implements BatchKernel {
+
+    @Override
+    public void multiplyAdd(double[] buffer, int sourceRow, double weight, double[] sums,
+        int length) {
+      for (int s = 0; s < length; s++) {
+        sums[s] += buffer[sourceRow + s] * weight;
+      }
+    }
+  }
+}
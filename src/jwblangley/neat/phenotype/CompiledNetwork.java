@@ -0,0 +1,718 @@
+package jwblangley.neat.phenotype;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleUnaryOperator;
+import jwblangley.neat.genotype.ConnectionGenotype;
+import jwblangley.neat.genotype.NetworkGenotype;
+import jwblangley.neat.genotype.NeuronGenotype;
+import jwblangley.neat.genotype.NeuronLayer;
+
+/**
+ * Phenotype for a neural network compiled into a compressed sparse row (CSR) matrix. Neurons are
+ * grouped by topological level: the neurons of level l have indices between levelStarts[l]
+ * (inclusive) and levelStarts[l + 1] (exclusive), with the input neurons forming level 0. A neuron
+ * only depends on neurons of lower levels, so the whole network can be calculated in a single pass
+ * over the levels. The incoming connections of each neuron are stored contiguously: the connections
+ * into the neuron at index n are those between edgeStarts[n] (inclusive) and edgeStarts[n + 1]
+ * (exclusive) in sources and weights.
+ *
+ * A CompiledNetwork is immutable and can be shared between any number of threads. All scratch space
+ * needed for calculation lives in an EvaluationContext, which each calling thread should own and
+ * reuse
+ */
+public class CompiledNetwork {
+
+  private final int numInputs;
+  private final int numNeurons;
+
+  private final int[] levelStarts;
+  private final int[] edgeStarts;
+  private final int[] sources;
+  private final double[] weights;
+  private final DoubleUnaryOperator[] activations;
+  private final int[] outputIndices;
+
+  private final int numPrunedNeurons;
+  private final int numPrunedConnections;
+
+  private static final int BATCH_TILE_SIZE = EvaluationContext.BATCH_TILE_SIZE;
+  private static final BatchKernel BATCH_KERNEL = BatchKernel.load();
+
+  /**
+   * Minimum number of connections calculated by each task in parallel calculation
+   */
+  public static final int PARALLEL_GRAIN_SIZE = 4096;
+
+  private CompiledNetwork(int numInputs, int[] levelStarts, int[] edgeStarts, int[] sources,
+      double[] weights, DoubleUnaryOperator[] activations, int[] outputIndices,
+      int numPrunedNeurons, int numPrunedConnections) {
+
+    this.numInputs = numInputs;
+    this.numNeurons = activations.length;
+    this.levelStarts = levelStarts;
+    this.edgeStarts = edgeStarts;
+    this.sources = sources;
+    this.weights = weights;
+    this.activations = activations;
+    this.outputIndices = outputIndices;
+    this.numPrunedNeurons = numPrunedNeurons;
+    this.numPrunedConnections = numPrunedConnections;
+  }
+
+  /**
+   * Compiles a new neural network for solving regression or other linear output problems from a
+   * given NetworkGenotype. Input and Hidden neurons use ReLu for activation whilst Output neurons
+   * use a linear activation function to ensure a full range
+   *
+   * @param genotype genotype to build phenotype from
+   * @return compiled neural network (phenotype)
+   */
+  public static CompiledNetwork createLinearOutputNetworkFromGenotype(NetworkGenotype genotype) {
+    return createNetworkFromGenotype(genotype, Activation.LINEAR);
+  }
+
+  /**
+   * Compiles a new neural network for solving various optimisation problems with sigmoid output
+   * from a given NetworkGenotype. Input and Hidden neurons use ReLu for activation whilst Output
+   * neurons use sigmoid for activation.
+   *
+   * @param genotype genotype to build phenotype from
+   * @return compiled neural network (phenotype)
+   */
+  public static CompiledNetwork createSigmoidOutputNetworkFromGenotype(NetworkGenotype genotype) {
+    return createNetworkFromGenotype(genotype, Activation.SIGMOID);
+  }
+
+  /**
+   * Compiles a NetworkGenotype into flat arrays, topologically sorting the neurons by their enabled
+   * connections. Input and Hidden neurons use ReLu for activation whilst Output neurons use the
+   * given activation function. Hidden neurons and connections that cannot affect any output are
+   * pruned; see getNumPrunedNeurons() and getNumPrunedConnections()
+   *
+   * @param genotype         genotype to build phenotype from
+   * @param outputActivation activation function for output neurons
+   * @return compiled neural network (phenotype)
+   */
+  public static CompiledNetwork createNetworkFromGenotype(NetworkGenotype genotype,
+      Activation outputActivation) {
+
+    /*
+     Genotype neurons are kept sorted by uid, which ensures that input and output neurons
+     are always added in the same order
+     */
+    final List<NeuronGenotype> neuronGenotypes = genotype.getNeurons();
+    final int numNeurons = neuronGenotypes.size();
+
+    // Ascending uids: a neuron's position is found by binary search
+    final int[] neuronUids = new int[numNeurons];
+    for (int i = 0; i < numNeurons; i++) {
+      neuronUids[i] = neuronGenotypes.get(i).getUid();
+    }
+
+    // Only enabled connections contribute to the phenotype
+    List<ConnectionGenotype> enabledConnections = new ArrayList<>();
+    for (ConnectionGenotype connection : genotype.getConnections()) {
+      if (connection.isEnabled()) {
+        enabledConnections.add(connection);
+      }
+    }
+    final int numConnections = enabledConnections.size();
+
+    // Connection endpoints as positions within neuronGenotypes
+    int[] connectionFrom = new int[numConnections];
+    int[] connectionTo = new int[numConnections];
+    int[] inDegrees = new int[numNeurons];
+    List<List<Integer>> outgoing = new ArrayList<>(numNeurons);
+    for (int i = 0; i < numNeurons; i++) {
+      outgoing.add(new ArrayList<>());
+    }
+
+    for (int c = 0; c < numConnections; c++) {
+      ConnectionGenotype connection = enabledConnections.get(c);
+      final int from = Arrays.binarySearch(neuronUids, connection.getNeuronFrom());
+      final int to = Arrays.binarySearch(neuronUids, connection.getNeuronTo());
+      if (from < 0 || to < 0) {
+        throw new IllegalArgumentException("Connection refers to a neuron not in the genotype");
+      }
+      if (neuronGenotypes.get(to).getLayer() == NeuronLayer.INPUT) {
+        throw new UnsupportedOperationException("Input neurons cannot have neuron inputs");
+      }
+
+      connectionFrom[c] = from;
+      connectionTo[c] = to;
+      inDegrees[to]++;
+      outgoing.get(from).add(c);
+    }
+
+    // Topological sort (Kahn's algorithm) with all input neurons placed first
+    int[] order = new int[numNeurons];
+    int ordered = 0;
+    Queue<Integer> ready = new ArrayDeque<>();
+    for (int i = 0; i < numNeurons; i++) {
+      if (neuronGenotypes.get(i).getLayer() == NeuronLayer.INPUT) {
+        order[ordered++] = i;
+      }
+    }
+    final int numInputs = ordered;
+    for (int i = 0; i < numNeurons; i++) {
+      if (neuronGenotypes.get(i).getLayer() != NeuronLayer.INPUT && inDegrees[i] == 0) {
+        ready.add(i);
+      }
+    }
+
+    int processed = 0;
+    while (processed < ordered || !ready.isEmpty()) {
+      if (processed == ordered) {
+        order[ordered++] = ready.remove();
+      }
+      for (int c : outgoing.get(order[processed])) {
+        if (--inDegrees[connectionTo[c]] == 0) {
+          ready.add(connectionTo[c]);
+        }
+      }
+      processed++;
+    }
+
+    if (ordered != numNeurons) {
+      throw new IllegalArgumentException("Genotype connections must not contain cycles");
+    }
+
+    /*
+     Dead structure elimination. A neuron is driven if its output can differ from 0: inputs are,
+     and so is any neuron with an incoming connection from a driven neuron. Every other hidden
+     neuron outputs ReLu(0) = 0 and so contributes nothing through a finite weight (a neuron with a
+     non-finite outgoing weight is conservatively treated as driven, since 0 * infinity is NaN).
+     A neuron is useful if an output neuron depends on it through connections from driven neurons
+     */
+    boolean[] driven = new boolean[numNeurons];
+    for (int i = 0; i < numNeurons; i++) {
+      final int position = order[i];
+      if (neuronGenotypes.get(position).getLayer() == NeuronLayer.INPUT) {
+        driven[position] = true;
+      }
+      for (int c : outgoing.get(position)) {
+        if (!Double.isFinite(enabledConnections.get(c).getWeight())) {
+          driven[position] = true;
+        }
+      }
+      if (driven[position]) {
+        for (int c : outgoing.get(position)) {
+          driven[connectionTo[c]] = true;
+        }
+      }
+    }
+
+    boolean[] useful = new boolean[numNeurons];
+    for (int i = numNeurons - 1; i >= 0; i--) {
+      final int position = order[i];
+      if (neuronGenotypes.get(position).getLayer() == NeuronLayer.OUTPUT) {
+        useful[position] = true;
+      } else if (driven[position]) {
+        for (int c : outgoing.get(position)) {
+          if (useful[connectionTo[c]]) {
+            useful[position] = true;
+            break;
+          }
+        }
+      }
+    }
+
+    // Input and output neurons are always kept so the network's interface is unchanged
+    boolean[] kept = new boolean[numNeurons];
+    int numKept = 0;
+    for (int position = 0; position < numNeurons; position++) {
+      kept[position] = neuronGenotypes.get(position).getLayer() != NeuronLayer.HIDDEN
+          || (driven[position] && useful[position]);
+      if (kept[position]) {
+        numKept++;
+      }
+    }
+
+    // A connection is kept if its source is driven and its target is kept
+    boolean[] keptConnections = new boolean[numConnections];
+    int numKeptConnections = 0;
+    for (int c = 0; c < numConnections; c++) {
+      keptConnections[c] = driven[connectionFrom[c]] && kept[connectionTo[c]];
+      if (keptConnections[c]) {
+        numKeptConnections++;
+      }
+    }
+
+    /*
+     Topological level of each kept neuron: inputs are level 0 and every other neuron is one level
+     above its highest source (level 1 if it has none). Neurons within a level are independent
+     */
+    int[] levels = new int[numNeurons];
+    int numLevels = numInputs > 0 ? 1 : 0;
+    for (int i = 0; i < numNeurons; i++) {
+      final int position = order[i];
+      if (!kept[position]) {
+        continue;
+      }
+      if (neuronGenotypes.get(position).getLayer() != NeuronLayer.INPUT) {
+        levels[position] = Math.max(levels[position], 1);
+      }
+      numLevels = Math.max(numLevels, levels[position] + 1);
+      for (int c : outgoing.get(position)) {
+        if (keptConnections[c]) {
+          levels[connectionTo[c]] = Math.max(levels[connectionTo[c]], levels[position] + 1);
+        }
+      }
+    }
+
+    // Index of each kept neuron, grouped by level (stable counting sort over topological order)
+    int[] levelStarts = new int[numLevels + 1];
+    for (int position = 0; position < numNeurons; position++) {
+      if (kept[position]) {
+        levelStarts[levels[position] + 1]++;
+      }
+    }
+    for (int l = 0; l < numLevels; l++) {
+      levelStarts[l + 1] += levelStarts[l];
+    }
+
+    int[] positionIndexMap = new int[numNeurons];
+    Arrays.fill(positionIndexMap, -1);
+    int[] nextInLevel = Arrays.copyOf(levelStarts, numLevels);
+    for (int i = 0; i < numNeurons; i++) {
+      if (kept[order[i]]) {
+        positionIndexMap[order[i]] = nextInLevel[levels[order[i]]]++;
+      }
+    }
+
+    /*
+     Group connections by their target neuron. A stable counting sort keeps the genotype's
+     connection order within each group, so sums are accumulated in the same order as before
+     */
+    int[] edgeStarts = new int[numKept + 1];
+    for (int c = 0; c < numConnections; c++) {
+      if (keptConnections[c]) {
+        edgeStarts[positionIndexMap[connectionTo[c]] + 1]++;
+      }
+    }
+    for (int i = 0; i < numKept; i++) {
+      edgeStarts[i + 1] += edgeStarts[i];
+    }
+
+    int[] sources = new int[numKeptConnections];
+    double[] weights = new double[numKeptConnections];
+    int[] nextEdge = Arrays.copyOf(edgeStarts, numKept);
+    for (int c = 0; c < numConnections; c++) {
+      if (keptConnections[c]) {
+        final int edge = nextEdge[positionIndexMap[connectionTo[c]]]++;
+        sources[edge] = positionIndexMap[connectionFrom[c]];
+        weights[edge] = enabledConnections.get(c).getWeight();
+      }
+    }
+
+    // Activations and outputs (outputs kept in uid order)
+    DoubleUnaryOperator[] activations = new DoubleUnaryOperator[numKept];
+    List<Integer> outputs = new ArrayList<>();
+    for (int position = 0; position < numNeurons; position++) {
+      if (!kept[position]) {
+        continue;
+      }
+      final int index = positionIndexMap[position];
+      if (neuronGenotypes.get(position).getLayer() == NeuronLayer.OUTPUT) {
+        activations[index] = outputActivation;
+        outputs.add(index);
+      } else {
+        activations[index] = Activation.RELU;
+      }
+    }
+    int[] outputIndices = outputs.stream().mapToInt(Integer::intValue).toArray();
+
+    return new CompiledNetwork(numInputs, levelStarts, edgeStarts, sources, weights, activations,
+        outputIndices, numNeurons - numKept, numConnections - numKeptConnections);
+  }
+
+  /**
+   * @return the number of inputs this network expects
+   */
+  public int getNumInputs() {
+    return numInputs;
+  }
+
+  /**
+   * @return the number of outputs this network calculates
+   */
+  public int getNumOutputs() {
+    return outputIndices.length;
+  }
+
+  /**
+   * @return the number of topological levels in this network, including the input level
+   */
+  public int getNumLevels() {
+    return levelStarts.length - 1;
+  }
+
+  /**
+   * @return the number of hidden neurons in the genotype that were removed because they cannot
+   * affect any output
+   */
+  public int getNumPrunedNeurons() {
+    return numPrunedNeurons;
+  }
+
+  /**
+   * @return the number of enabled connections in the genotype that were removed because they cannot
+   * affect any output
+   */
+  public int getNumPrunedConnections() {
+    return numPrunedConnections;
+  }
+
+  // Package-private views of the compiled structure for code generation. Not to be modified
+
+  int getNumNeurons() {
+    return numNeurons;
+  }
+
+  int[] getLevelStarts() {
+    return levelStarts;
+  }
+
+  int[] getEdgeStarts() {
+    return edgeStarts;
+  }
+
+  int[] getSources() {
+    return sources;
+  }
+
+  double[] getWeights() {
+    return weights;
+  }
+
+  DoubleUnaryOperator getActivation(int neuronIndex) {
+    return activations[neuronIndex];
+  }
+
+  int[] getOutputIndices() {
+    return outputIndices;
+  }
+
+  /**
+   * Creates a new EvaluationContext sized for this network
+   *
+   * @return new EvaluationContext
+   */
+  public EvaluationContext createEvaluationContext() {
+    return new EvaluationContext(this);
+  }
+
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs, writing the results
+   * into a caller supplied buffer. No objects are allocated once the context has grown to fit this
+   * network, so this is suitable for calling in a tight loop
+   *
+   * @param inputs  ordered inputs
+   * @param outputs buffer to write the ordered outputs into. Must have length equal to the number
+   *                of outputs
+   * @param context scratch space owned by the calling thread
+   */
+  public void calculateOutputs(double[] inputs, double[] outputs, EvaluationContext context) {
+    if (inputs.length != numInputs) {
+      throw new InputMismatchException(
+          "Number of provided inputs does not match number of input neurons");
+    }
+    if (outputs.length != outputIndices.length) {
+      throw new InputMismatchException(
+          "Size of provided output buffer does not match number of output neurons");
+    }
+
+    final double[] activationBuffer = context.getActivationBuffer(numNeurons);
+
+    // Set inputs
+    for (int i = 0; i < numInputs; i++) {
+      activationBuffer[i] = activations[i].applyAsDouble(inputs[i]);
+    }
+
+    // Neurons are ordered by level so every source has been calculated before it is read
+    calculateNeurons(activationBuffer, numInputs, numNeurons);
+
+    // Get results
+    for (int o = 0; o < outputIndices.length; o++) {
+      outputs[o] = activationBuffer[outputIndices[o]];
+    }
+  }
+
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs, splitting each
+   * topological level across a ForkJoinPool. Neurons within a level are independent once the
+   * previous levels have been calculated, so only one synchronisation is needed per level. Levels
+   * with fewer than PARALLEL_GRAIN_SIZE connections are calculated on the calling thread. This is
+   * only worthwhile for very wide networks (thousands of neurons per level) in latency-critical
+   * code; otherwise prefer calculating separate networks or samples concurrently. Results are
+   * identical to calculateOutputs
+   *
+   * @param inputs  ordered inputs
+   * @param outputs buffer to write the ordered outputs into. Must have length equal to the number
+   *                of outputs
+   * @param context scratch space owned by the calling thread
+   * @param pool    pool to split levels across
+   */
+  public void calculateOutputsInParallel(double[] inputs, double[] outputs,
+      EvaluationContext context, ForkJoinPool pool) {
+
+    if (inputs.length != numInputs) {
+      throw new InputMismatchException(
+          "Number of provided inputs does not match number of input neurons");
+    }
+    if (outputs.length != outputIndices.length) {
+      throw new InputMismatchException(
+          "Size of provided output buffer does not match number of output neurons");
+    }
+
+    final double[] activationBuffer = context.getActivationBuffer(numNeurons);
+
+    // Set inputs
+    for (int i = 0; i < numInputs; i++) {
+      activationBuffer[i] = activations[i].applyAsDouble(inputs[i]);
+    }
+
+    // Level 0 is the inputs
+    for (int l = 1; l < levelStarts.length - 1; l++) {
+      final int from = levelStarts[l];
+      final int to = levelStarts[l + 1];
+      if (edgeStarts[to] - edgeStarts[from] < PARALLEL_GRAIN_SIZE) {
+        calculateNeurons(activationBuffer, from, to);
+      } else {
+        pool.invoke(new LevelTask(activationBuffer, from, to));
+      }
+    }
+
+    // Get results
+    for (int o = 0; o < outputIndices.length; o++) {
+      outputs[o] = activationBuffer[outputIndices[o]];
+    }
+  }
+
+  /**
+   * Calculate the activations of the neurons with indices between from (inclusive) and to
+   * (exclusive). All of their sources must already have been calculated
+   */
+  private void calculateNeurons(double[] activationBuffer, int from, int to) {
+    for (int n = from; n < to; n++) {
+      double inputSum = 0;
+      for (int e = edgeStarts[n]; e < edgeStarts[n + 1]; e++) {
+        inputSum += activationBuffer[sources[e]] * weights[e];
+      }
+      activationBuffer[n] = activations[n].applyAsDouble(inputSum);
+    }
+  }
+
+  /**
+   * Task calculating a range of neurons within a single level, recursively split in half until each
+   * part has at most PARALLEL_GRAIN_SIZE connections
+   */
+  private class LevelTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double[] activationBuffer;
+    private final int from;
+    private final int to;
+
+    LevelTask(double[] activationBuffer, int from, int to) {
+      this.activationBuffer = activationBuffer;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= 1 || edgeStarts[to] - edgeStarts[from] <= PARALLEL_GRAIN_SIZE) {
+        calculateNeurons(activationBuffer, from, to);
+      } else {
+        final int middle = (from + to) >>> 1;
+        invokeAll(new LevelTask(activationBuffer, from, middle),
+            new LevelTask(activationBuffer, middle, to));
+      }
+    }
+  }
+
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs, writing the results
+   * into a caller supplied buffer. A temporary EvaluationContext is created for the calculation;
+   * use the overload taking a context to avoid this allocation
+   *
+   * @param inputs  ordered inputs
+   * @param outputs buffer to write the ordered outputs into. Must have length equal to the number
+   *                of outputs
+   */
+  public void calculateOutputs(double[] inputs, double[] outputs) {
+    calculateOutputs(inputs, outputs, createEvaluationContext());
+  }
+
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs
+   *
+   * @param inputs ordered inputs in a List
+   * @return calculated result
+   */
+  public List<Double> calculateOutputs(List<Double> inputs) {
+    return calculateOutputs(inputs, createEvaluationContext());
+  }
+
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs
+   *
+   * @param inputs  ordered inputs in a List
+   * @param context scratch space owned by the calling thread
+   * @return calculated result
+   */
+  public List<Double> calculateOutputs(List<Double> inputs, EvaluationContext context) {
+    if (inputs.size() != numInputs) {
+      throw new InputMismatchException(
+          "Number of provided inputs does not match number of input neurons");
+    }
+
+    double[] inputArray = new double[numInputs];
+    for (int i = 0; i < numInputs; i++) {
+      inputArray[i] = inputs.get(i);
+    }
+    double[] outputArray = new double[outputIndices.length];
+    calculateOutputs(inputArray, outputArray, context);
+
+    List<Double> results = new ArrayList<>(outputArray.length);
+    for (double output : outputArray) {
+      results.add(output);
+    }
+    return results;
+  }
+
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs
+   *
+   * @param inputs ordered inputs as varargs
+   * @return calculated result
+   */
+  public List<Double> calculateOutputs(Double... inputs) {
+    return calculateOutputs(Arrays.asList(inputs));
+  }
+
+  /**
+   * Calculate the outputs of this neural network for a batch of samples. The batch is split into
+   * tiles of BATCH_TILE_SIZE samples; the network topology is traversed once per tile and each
+   * connection is applied to every sample in the tile before moving on, which amortises the cost of
+   * traversal and lets the weighted sums be computed several samples at a time with SIMD
+   *
+   * @param inputs    ordered inputs for every sample laid out as batchSize x numInputs (row-major),
+   *                  i.e. input i of sample s is at s * numInputs + i
+   * @param batchSize number of samples in the batch
+   * @return calculated results laid out as batchSize x numOutputs (row-major)
+   */
+  public double[] calculateBatchOutputs(double[] inputs, int batchSize) {
+    double[] outputs = new double[batchSize * outputIndices.length];
+    calculateBatchOutputs(inputs, outputs, batchSize, createEvaluationContext());
+    return outputs;
+  }
+
+  /**
+   * Calculate the outputs of this neural network for a batch of samples in a single pass over the
+   * network, writing the results into a caller supplied buffer
+   *
+   * @param inputs    ordered inputs for every sample laid out as batchSize x numInputs (row-major),
+   *                  i.e. input i of sample s is at s * numInputs + i
+   * @param outputs   buffer to write the results into laid out as batchSize x numOutputs
+   *                  (row-major)
+   * @param batchSize number of samples in the batch
+   * @param context   scratch space owned by the calling thread
+   */
+  public void calculateBatchOutputs(double[] inputs, double[] outputs, int batchSize,
+      EvaluationContext context) {
+    final int numOutputs = outputIndices.length;
+    if (batchSize < 0 || inputs.length != batchSize * numInputs) {
+      throw new InputMismatchException(
+          "Number of provided inputs does not match batch size and number of input neurons");
+    }
+    if (outputs.length != batchSize * numOutputs) {
+      throw new InputMismatchException(
+          "Size of provided output buffer does not match batch size and number of output neurons");
+    }
+
+    final double[] buffer = context.getBatchBuffer(numNeurons);
+    final double[] sums = context.getBatchSums();
+
+    for (int tileStart = 0; tileStart < batchSize; tileStart += BATCH_TILE_SIZE) {
+      calculateBatchTile(inputs, outputs, tileStart, Math.min(BATCH_TILE_SIZE,
+          batchSize - tileStart), buffer, sums);
+    }
+  }
+
+  /**
+   * Calculate the outputs for a tile of at most BATCH_TILE_SIZE consecutive samples. Every inner
+   * loop runs over the samples of the tile. The weighted sums are calculated by BATCH_KERNEL, which
+   * uses the Vector API when it is available
+   *
+   * @param inputs    ordered inputs for the whole batch (row-major)
+   * @param outputs   buffer for the results of the whole batch (row-major)
+   * @param tileStart index of the first sample in the tile
+   * @param tileSize  number of samples in the tile
+   * @param buffer    neuron-major batch buffer
+   * @param sums      weighted input sums buffer
+   */
+  private void calculateBatchTile(double[] inputs, double[] outputs, int tileStart,
+      int tileSize, double[] buffer, double[] sums) {
+
+    final int numOutputs = outputIndices.length;
+
+    // Set inputs, transposing into neuron-major order
+    for (int i = 0; i < numInputs; i++) {
+      final int row = i * BATCH_TILE_SIZE;
+      for (int s = 0; s < tileSize; s++) {
+        sums[s] = inputs[(tileStart + s) * numInputs + i];
+      }
+      applyActivation(activations[i], sums, buffer, row, tileSize);
+    }
+
+    // Neurons are ordered by level so every source has been calculated before it is read
+    for (int n = numInputs; n < numNeurons; n++) {
+      Arrays.fill(sums, 0, tileSize, 0d);
+
+      for (int e = edgeStarts[n]; e < edgeStarts[n + 1]; e++) {
+        BATCH_KERNEL.multiplyAdd(buffer, sources[e] * BATCH_TILE_SIZE, weights[e], sums, tileSize);
+      }
+
+      applyActivation(activations[n], sums, buffer, n * BATCH_TILE_SIZE, tileSize);
+    }
+
+    // Get results, transposing back into sample-major order
+    for (int o = 0; o < numOutputs; o++) {
+      final int row = outputIndices[o] * BATCH_TILE_SIZE;
+      for (int s = 0; s < tileSize; s++) {
+        outputs[(tileStart + s) * numOutputs + o] = buffer[row + s];
+      }
+    }
+  }
+
+  /**
+   * Apply an activation function to every sum, storing the results in a row of the batch buffer.
+   * ReLu and linear activations are written as plain loops so that they are vectorised along with
+   * the weighted sums
+   */
+  private static void applyActivation(DoubleUnaryOperator activation, double[] sums,
+      double[] buffer, int row, int tileSize) {
+
+    if (activation == Activation.RELU) {
+      for (int s = 0; s < tileSize; s++) {
+        buffer[row + s] = Math.max(0, sums[s]);
+      }
+    } else if (activation == Activation.LINEAR) {
+      System.arraycopy(sums, 0, buffer, row, tileSize);
+    } else {
+      for (int s = 0; s < tileSize; s++) {
+        buffer[row + s] = activation.applyAsDouble(sums[s]);
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package jwblangley.neat.phenotype;
+
+/**
+ * Reusable scratch space for calculating a CompiledNetwork. A CompiledNetwork is immutable and can
+ * be shared between threads, whereas an EvaluationContext must only be used by one thread at a
+ * time. A single context can be reused across any number of calculations on any number of
+ * networks: its buffers grow to fit the largest network it has been used with
+ */
+public class EvaluationContext {
+
+  /**
+   * Number of samples calculated together in batched calculation. Chosen to be a multiple of the
+   * widest SIMD register (8 doubles for AVX-512) whilst keeping a tile's buffer cache resident
+   */
+  static final int BATCH_TILE_SIZE = 64;
+
+  private double[] activationBuffer;
+  /**
+   * Neuron-major buffer for batched calculation: the activation of neuron n for sample s of the
+   * current tile is stored at n * BATCH_TILE_SIZE + s
+   */
+  private double[] batchBuffer;
+  /**
+   * Weighted input sums for every sample of the current tile
+   */
+  private double[] batchSums;
+
+  /**
+   * Construct a new (empty) EvaluationContext
+   */
+  public EvaluationContext() {
+    this.activationBuffer = new double[0];
+    this.batchBuffer = new double[0];
+    this.batchSums = new double[BATCH_TILE_SIZE];
+  }
+
+  /**
+   * Construct a new EvaluationContext sized for the given network, such that calculating that
+   * network never allocates
+   *
+   * @param network network the context will be used with
+   */
+  public EvaluationContext(CompiledNetwork network) {
+    this.activationBuffer = new double[network.getNumNeurons()];
+    this.batchBuffer = new double[0];
+    this.batchSums = new double[BATCH_TILE_SIZE];
+  }
+
+  /**
+   * @param numNeurons number of neurons in the network to be calculated
+   * @return per-neuron activation buffer with at least numNeurons elements
+   */
+  double[] getActivationBuffer(int numNeurons) {
+    if (activationBuffer.length < numNeurons) {
+      activationBuffer = new double[numNeurons];
+    }
+    return activationBuffer;
+  }
+
+  /**
+   * @param numNeurons number of neurons in the network to be calculated
+   * @return neuron-major batch buffer with at least numNeurons * BATCH_TILE_SIZE elements
+   */
+  double[] getBatchBuffer(int numNeurons) {
+    if (batchBuffer.length < numNeurons * BATCH_TILE_SIZE) {
+      batchBuffer = new double[numNeurons * BATCH_TILE_SIZE];
+    }
+    return batchBuffer;
+  }
+
+  /**
+   * @return buffer of BATCH_TILE_SIZE weighted input sums
+   */
+  double[] getBatchSums() {
+    return batchSums;
+  }
+}
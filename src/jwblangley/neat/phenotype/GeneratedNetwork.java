@@ -0,0 +1,106 @@
+package jwblangley.neat.phenotype;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.List;
+
+/**
+ * Base class for neural networks generated as straight-line JVM code by NetworkCodeGenerator.
+ * Subclasses only keep scratch space per thread, so a single instance can safely be shared between
+ * threads. Offers the same calculateOutputs contract as Network
+ */
+public abstract class GeneratedNetwork {
+
+  private final int numInputs;
+  private final int numOutputs;
+
+  /**
+   * Construct a new GeneratedNetwork
+   *
+   * @param numInputs  the number of inputs the network expects
+   * @param numOutputs the number of outputs the network calculates
+   */
+  protected GeneratedNetwork(int numInputs, int numOutputs) {
+    this.numInputs = numInputs;
+    this.numOutputs = numOutputs;
+  }
+
+  /**
+   * Calculate the outputs of the network. Buffer sizes have already been checked
+   *
+   * @param inputs  ordered inputs
+   * @param outputs buffer to write the ordered outputs into
+   */
+  protected abstract void calculate(double[] inputs, double[] outputs);
+
+  /**
+   * @return the number of inputs this network expects
+   */
+  public int getNumInputs() {
+    return numInputs;
+  }
+
+  /**
+   * @return the number of outputs this network calculates
+   */
+  public int getNumOutputs() {
+    return numOutputs;
+  }
+
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs, writing the results
+   * into a caller supplied buffer. No objects are allocated after a thread's first calculation
+   *
+   * @param inputs  ordered inputs
+   * @param outputs buffer to write the ordered outputs into. Must have length equal to
+   *                getNumOutputs()
+   */
+  public void calculateOutputs(double[] inputs, double[] outputs) {
+    if (inputs.length != numInputs) {
+      throw new InputMismatchException(
+          "Number of provided inputs does not match number of input neurons");
+    }
+    if (outputs.length != numOutputs) {
+      throw new InputMismatchException(
+          "Size of provided output buffer does not match number of output neurons");
+    }
+    calculate(inputs, outputs);
+  }
+
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs
+   *
+   * @param inputs ordered inputs in a List
+   * @return calculated result
+   */
+  public List<Double> calculateOutputs(List<Double> inputs) {
+    if (inputs.size() != numInputs) {
+      throw new InputMismatchException(
+          "Number of provided inputs does not match number of input neurons");
+    }
+
+    double[] inputArray = new double[numInputs];
+    for (int i = 0; i < numInputs; i++) {
+      inputArray[i] = inputs.get(i);
+    }
+    double[] outputArray = new double[numOutputs];
+    calculate(inputArray, outputArray);
+
+    List<Double> results = new ArrayList<>(numOutputs);
+    for (double output : outputArray) {
+      results.add(output);
+    }
+    return results;
+  }
+
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs
+   *
+   * @param inputs ordered inputs as varargs
+   * @return calculated result
+   */
+  public List<Double> calculateOutputs(Double... inputs) {
+    return calculateOutputs(Arrays.asList(inputs));
+  }
+}
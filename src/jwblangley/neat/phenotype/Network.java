@@ -1,31 +1,24 @@
 package jwblangley.neat.phenotype;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.InputMismatchException;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import jwblangley.neat.genotype.ConnectionGenotype;
+import java.util.concurrent.ForkJoinPool;
 import jwblangley.neat.genotype.NetworkGenotype;
-import jwblangley.neat.genotype.NeuronGenotype;
-import jwblangley.neat.genotype.NeuronLayer;
 
 /**
- * Phenotype for a neural network
+ * Phenotype for a neural network. Calculation is delegated to a CompiledNetwork built once from the
+ * genotype, using scratch space owned by this Network. A Network must therefore only be used by one
+ * thread at a time; to share a single network between threads, share its CompiledNetwork and give
+ * each thread its own EvaluationContext
  */
 public class Network {
 
-  private final List<Neuron> neurons;
-  private final List<InputNeuron> inputNeurons;
-  private final List<Neuron> outputNeurons;
+  private final CompiledNetwork compiledNetwork;
+  private final EvaluationContext context;
 
-  private Network() {
-    this.neurons = new ArrayList<>();
-    this.inputNeurons = new ArrayList<>();
-    this.outputNeurons = new ArrayList<>();
+  private Network(CompiledNetwork compiledNetwork) {
+    this.compiledNetwork = compiledNetwork;
+    this.context = compiledNetwork.createEvaluationContext();
   }
 
   /**
@@ -52,55 +45,83 @@ public class Network {
     return createNetworkFromGenotype(genotype, Activation.SIGMOID);
   }
 
-  private static Network createNetworkFromGenotype(NetworkGenotype genotype,
-      Function<Double, Double> outputActivation) {
-
-    Network network = new Network();
-
-    Map<Integer, Neuron> uidNeuronMap = new HashMap<>();
-
-    /*
-     Sort neurons first by guid to ensure that input and output neurons
-     are always added in the same order
-     */
-    List<NeuronGenotype> neuronGenotypes = new ArrayList<>(genotype.getNeurons());
-    neuronGenotypes.sort(Comparator.comparingDouble(NeuronGenotype::getUid));
-
-    // Add neurons
-    for (NeuronGenotype neuronGenotype : neuronGenotypes) {
-      Neuron neuron;
+  /**
+   * Creates a new neural network from a given NetworkGenotype with a chosen output activation.
+   * Input and Hidden neurons use ReLu for activation whilst Output neurons use outputActivation.
+   * This can be used to opt in to the fast approximated activation functions
+   *
+   * @param genotype         genotype to build phenotype from
+   * @param outputActivation activation function for output neurons
+   * @return constructed neural network (phenotype)
+   */
+  public static Network createNetworkFromGenotype(NetworkGenotype genotype,
+      Activation outputActivation) {
 
-      if (neuronGenotype.getLayer() == NeuronLayer.INPUT) {
-        neuron = new InputNeuron(Activation.RELU);
-        network.inputNeurons.add((InputNeuron) neuron);
-      } else {
-        neuron = new Neuron(neuronGenotype.getLayer() == NeuronLayer.OUTPUT
-            ? outputActivation
-            : Activation.RELU);
+    return new Network(CompiledNetwork.createNetworkFromGenotype(genotype, outputActivation));
+  }
 
-        if (neuronGenotype.getLayer() == NeuronLayer.OUTPUT) {
-          network.outputNeurons.add(neuron);
-        }
-      }
+  /**
+   * @return the immutable, thread-safe compiled form of this network
+   */
+  public CompiledNetwork getCompiledNetwork() {
+    return compiledNetwork;
+  }
 
-      network.neurons.add(neuron);
-      uidNeuronMap.put(neuronGenotype.getUid(), neuron);
-    }
+  /**
+   * @return the number of inputs this network expects
+   */
+  public int getNumInputs() {
+    return compiledNetwork.getNumInputs();
+  }
 
-    // Add connections
-    for (ConnectionGenotype connectionGenotype : genotype.getConnections()) {
-      // Skip disabled connections
-      if (!connectionGenotype.isEnabled()) {
-        continue;
-      }
+  /**
+   * @return the number of outputs this network calculates
+   */
+  public int getNumOutputs() {
+    return compiledNetwork.getNumOutputs();
+  }
 
-      Neuron toNeuron = uidNeuronMap.get(connectionGenotype.getNeuronTo());
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs, writing the results
+   * into a caller supplied buffer. No objects are allocated, so this is suitable for calling every
+   * tick of a simulation
+   *
+   * @param inputs  ordered inputs
+   * @param outputs buffer to write the ordered outputs into. Must have length equal to
+   *                getNumOutputs()
+   */
+  public void calculateOutputs(double[] inputs, double[] outputs) {
+    compiledNetwork.calculateOutputs(inputs, outputs, context);
+  }
 
-      toNeuron.addInput(uidNeuronMap.get(connectionGenotype.getNeuronFrom()),
-          connectionGenotype.getWeight());
-    }
+  /**
+   * Calculate the output of this neural network for given (ordered) inputs, splitting each
+   * topological level of the network across a ForkJoinPool. Only worthwhile for very wide networks
+   * in latency-critical code. Results are identical to calculateOutputs
+   *
+   * @param inputs  ordered inputs
+   * @param outputs buffer to write the ordered outputs into. Must have length equal to
+   *                getNumOutputs()
+   * @param pool    pool to split levels across
+   */
+  public void calculateOutputsInParallel(double[] inputs, double[] outputs, ForkJoinPool pool) {
+    compiledNetwork.calculateOutputsInParallel(inputs, outputs, context, pool);
+  }
 
-    return network;
+  /**
+   * Calculate the outputs of this neural network for a whole batch of samples at once. This is
+   * considerably faster than calculating each sample individually when scoring a network against
+   * many dataset rows
+   *
+   * @param inputs    ordered inputs for every sample laid out as batchSize x getNumInputs()
+   *                  (row-major), i.e. input i of sample s is at s * getNumInputs() + i
+   * @param batchSize number of samples in the batch
+   * @return calculated results laid out as batchSize x getNumOutputs() (row-major)
+   */
+  public double[] calculateBatchOutputs(double[] inputs, int batchSize) {
+    double[] outputs = new double[batchSize * compiledNetwork.getNumOutputs()];
+    compiledNetwork.calculateBatchOutputs(inputs, outputs, batchSize, context);
+    return outputs;
   }
 
   /**
@@ -110,34 +131,7 @@ public class Network {
    * @return calculated result
    */
   public List<Double> calculateOutputs(List<Double> inputs) {
-    if (inputs.size() != inputNeurons.size()) {
-      throw new InputMismatchException(
-          "Number of provided inputs does not match number of input neurons");
-    }
-
-    // Clear any residual stored outputs
-    for (Neuron neuron : neurons) {
-      neuron.clear();
-    }
-
-    // Set inputs
-    for (int i = 0; i < inputs.size(); i++) {
-      inputNeurons.get(i).setInput(inputs.get(i));
-    }
-
-    // Try to calculate each node until eventually the output nodes will be outputting
-    while (!outputNeurons.stream().allMatch(Neuron::isOutputting)) {
-      for (Neuron neuron : neurons) {
-        neuron.tryCalculate();
-      }
-    }
-
-    // Get results
-    List<Double> results = new ArrayList<>(outputNeurons.size());
-    for (Neuron outputNeuron : outputNeurons) {
-      results.add(outputNeuron.getOutput());
-    }
-    return results;
+    return compiledNetwork.calculateOutputs(inputs, context);
   }
 
   /**
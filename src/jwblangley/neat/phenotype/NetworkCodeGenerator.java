@@ -0,0 +1,447 @@
+package jwblangley.neat.phenotype;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import jwblangley.neat.genotype.NetworkGenotype;
+
+/**
+ * Class holding static methods for turning a network genotype into straight-line JVM code. Every
+ * weighted sum is unrolled with the weights written as constants, so there are no loops or
+ * branches. Code is split into methods small enough for the JIT to compile. This is intended for
+ * final (champion) networks that are deployed and calculated a very large number of times
+ */
+public class NetworkCodeGenerator {
+
+  /**
+   * Package that generated classes are placed in
+   */
+  public static final String GENERATED_PACKAGE = "jwblangley.neat.phenotype.generated";
+
+  /**
+   * Networks with more connections than this are not compiled: compile() returns an equivalent
+   * GeneratedNetwork backed by a CompiledNetwork instead. Beyond this size the generated class
+   * approaches the JVM's constant pool limit and compiling it takes longer than it saves
+   */
+  public static final int MAX_GENERATED_CONNECTIONS = 16384;
+
+  /**
+   * Generated methods are kept below HotSpot's 8000 byte limit for JIT compiling a method
+   */
+  private static final int MAX_METHOD_BYTECODE = 7000;
+  /**
+   * Upper estimates of the bytecode to calculate a neuron and to add one connection to a sum
+   */
+  private static final int NEURON_BYTECODE = 32;
+  private static final int CONNECTION_BYTECODE = 10;
+  private static final int MAX_STATEMENT_CONNECTIONS = 64;
+
+  private static final AtomicInteger classCounter = new AtomicInteger();
+
+  /**
+   * Generate Java source for a GeneratedNetwork subclass equivalent to the network created by
+   * Network.createNetworkFromGenotype with the same arguments. The source can be saved and compiled
+   * ahead of time, or compiled at runtime with compile(). Small networks are generated as a single
+   * method holding every neuron in a local. Larger networks are split across several methods, each
+   * small enough to be JIT compiled, which share neuron values through a per-thread array
+   *
+   * @param genotype         genotype to build phenotype from
+   * @param outputActivation activation function for output neurons
+   * @param className        simple name of the generated class
+   * @return Java source of the generated class
+   */
+  public static String generateSource(NetworkGenotype genotype, Activation outputActivation,
+      String className) {
+
+    return generateSource(
+        CompiledNetwork.createNetworkFromGenotype(genotype, outputActivation), className);
+  }
+
+  private static String generateSource(CompiledNetwork network, String className) {
+    final int numInputs = network.getNumInputs();
+    final int[] outputIndices = network.getOutputIndices();
+
+    StringBuilder source = new StringBuilder();
+    source.append("package ").append(GENERATED_PACKAGE).append(";\n\n")
+        .append("public final class ").append(className)
+        .append(" extends ").append(GeneratedNetwork.class.getName()).append(" {\n\n");
+
+    final boolean singleMethod = network.getNumNeurons() * NEURON_BYTECODE
+        + network.getWeights().length * CONNECTION_BYTECODE <= MAX_METHOD_BYTECODE;
+    if (!singleMethod) {
+      source.append("  private static final ThreadLocal<double[]> VALUES\n")
+          .append("      = ThreadLocal.withInitial(() -> new double[")
+          .append(network.getNumNeurons()).append("]);\n\n");
+    }
+
+    source.append("  public ").append(className).append("() {\n")
+        .append("    super(").append(numInputs).append(", ").append(outputIndices.length)
+        .append(");\n")
+        .append("  }\n\n")
+        .append("  @Override\n")
+        .append("  protected void calculate(double[] inputs, double[] outputs) {\n");
+
+    if (singleMethod) {
+      // One local per neuron, in topological order
+      for (int n = 0; n < network.getNumNeurons(); n++) {
+        source.append("    final double n").append(n).append(" = ")
+            .append(neuronExpression(network, n, "n")).append(";\n");
+      }
+      for (int o = 0; o < outputIndices.length; o++) {
+        source.append("    outputs[").append(o).append("] = n").append(outputIndices[o])
+            .append(";\n");
+      }
+      source.append("  }\n}\n");
+      return source.toString();
+    }
+
+    // Neuron values are held in v; each chunk method calculates a run of neurons
+    final StringBuilder chunks = new StringBuilder();
+    final int numChunks = generateChunks(network, chunks);
+
+    source.append("    final double[] v = VALUES.get();\n");
+    for (int c = 0; c < numChunks; c++) {
+      source.append("    chunk").append(c).append("(inputs, v);\n");
+    }
+    for (int o = 0; o < outputIndices.length; o++) {
+      source.append("    outputs[").append(o).append("] = v[").append(outputIndices[o])
+          .append("];\n");
+    }
+    source.append("  }\n").append(chunks).append("}\n");
+    return source.toString();
+  }
+
+  /**
+   * Append methods calculating every neuron into v, each within MAX_METHOD_BYTECODE. A neuron with
+   * too many connections for one method has its weighted sum split across several, keeping the
+   * partial sum in v
+   *
+   * @return the number of methods generated
+   */
+  private static int generateChunks(CompiledNetwork network, StringBuilder chunks) {
+    final int[] edgeStarts = network.getEdgeStarts();
+    final int numInputs = network.getNumInputs();
+
+    int numChunks = 0;
+    int budget = 0;
+    for (int n = 0; n < network.getNumNeurons(); n++) {
+      if (n < numInputs) {
+        if (budget < NEURON_BYTECODE) {
+          budget = startChunk(chunks, numChunks++);
+        }
+        chunks.append("    v[").append(n).append("] = ")
+            .append(neuronExpression(network, n, "v")).append(";\n");
+        budget -= NEURON_BYTECODE;
+        continue;
+      }
+
+      // Same accumulation order as CompiledNetwork, so results are identical
+      int e = edgeStarts[n];
+      final int last = edgeStarts[n + 1];
+      if (budget < NEURON_BYTECODE + CONNECTION_BYTECODE) {
+        budget = startChunk(chunks, numChunks++);
+      }
+      chunks.append("    s = 0d;\n");
+      budget -= NEURON_BYTECODE;
+      while (e < last) {
+        if (budget < NEURON_BYTECODE + CONNECTION_BYTECODE) {
+          // Carry the partial sum into the next method
+          chunks.append("    v[").append(n).append("] = s;\n");
+          budget = startChunk(chunks, numChunks++);
+          chunks.append("    s = v[").append(n).append("];\n");
+          budget -= NEURON_BYTECODE;
+        }
+
+        // Bounded statements keep javac's recursion over long expressions shallow
+        final int end = Math.min(last, e + Math.min(MAX_STATEMENT_CONNECTIONS,
+            (budget - NEURON_BYTECODE) / CONNECTION_BYTECODE));
+        chunks.append("    s = s");
+        for (int t = e; t < end; t++) {
+          chunks.append(" + ").append(sourceTerm(network, t, "v"));
+        }
+        chunks.append(";\n");
+        budget -= (end - e) * CONNECTION_BYTECODE;
+        e = end;
+      }
+      chunks.append("    v[").append(n).append("] = ")
+          .append(activationExpression(network.getActivation(n), "s")).append(";\n");
+    }
+    if (numChunks > 0) {
+      chunks.append("  }\n");
+    }
+    return numChunks;
+  }
+
+  private static int startChunk(StringBuilder chunks, int chunk) {
+    if (chunk > 0) {
+      chunks.append("  }\n");
+    }
+    chunks.append("\n  private static void chunk").append(chunk)
+        .append("(double[] inputs, double[] v) {\n")
+        .append("    double s;\n");
+    return MAX_METHOD_BYTECODE;
+  }
+
+  /**
+   * @param values how neuron values are read: "n" for locals, "v" for the shared array
+   * @return expression for the output of a neuron, with its weighted sum written inline
+   */
+  private static String neuronExpression(CompiledNetwork network, int n, String values) {
+    final int[] edgeStarts = network.getEdgeStarts();
+    final String sum;
+    if (n < network.getNumInputs()) {
+      sum = "inputs[" + n + "]";
+    } else {
+      // Same accumulation order as CompiledNetwork, so results are identical
+      StringBuilder weightedSum = new StringBuilder("0d");
+      for (int e = edgeStarts[n]; e < edgeStarts[n + 1]; e++) {
+        weightedSum.append(" + ").append(sourceTerm(network, e, values));
+      }
+      sum = weightedSum.toString();
+    }
+    return activationExpression(network.getActivation(n), sum);
+  }
+
+  private static String sourceTerm(CompiledNetwork network, int edge, String values) {
+    final int source = network.getSources()[edge];
+    return (values.equals("n") ? "n" + source : "v[" + source + "]")
+        + " * " + doubleLiteral(network.getWeights()[edge]);
+  }
+
+  /**
+   * Generate and compile a GeneratedNetwork equivalent to the network created by
+   * Network.createNetworkFromGenotype with the same arguments. Requires a Java compiler to be
+   * available at runtime (i.e. running on a JDK rather than a JRE), unless the network has more
+   * than MAX_GENERATED_CONNECTIONS connections, in which case the returned network calculates with
+   * a CompiledNetwork instead. The returned network can be shared between threads
+   *
+   * @param genotype         genotype to build phenotype from
+   * @param outputActivation activation function for output neurons
+   * @return compiled network
+   */
+  public static GeneratedNetwork compile(NetworkGenotype genotype, Activation outputActivation) {
+    final CompiledNetwork network
+        = CompiledNetwork.createNetworkFromGenotype(genotype, outputActivation);
+    if (network.getWeights().length > MAX_GENERATED_CONNECTIONS) {
+      return new CompiledNetworkAdapter(network);
+    }
+
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null) {
+      throw new UnsupportedOperationException(
+          "No Java compiler available at runtime. Use generateSource to compile ahead of time");
+    }
+
+    final String className = "Network" + classCounter.getAndIncrement();
+    final String qualifiedName = GENERATED_PACKAGE + "." + className;
+    final String source = generateSource(network, className);
+
+    final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    final List<String> options = Arrays.asList("-classpath", compilationClasspath());
+    final List<JavaFileObject> units = Arrays.asList(new SourceFile(qualifiedName, source));
+
+    // Closing the file manager releases the classpath archives opened by the compiler
+    final Map<String, ByteArrayOutputStream> classBytes;
+    try (InMemoryFileManager fileManager = new InMemoryFileManager(
+        compiler.getStandardFileManager(diagnostics, null, null))) {
+      final boolean success = compiler
+          .getTask(null, fileManager, diagnostics, options, null, units)
+          .call();
+
+      if (!success) {
+        StringBuilder message = new StringBuilder("Failed to compile generated network:");
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+          message.append('\n').append(diagnostic.getMessage(null));
+        }
+        throw new IllegalStateException(message.toString());
+      }
+      classBytes = fileManager.classBytes;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to close compiler file manager", e);
+    }
+
+    try {
+      final ClassLoader loader = new GeneratedClassLoader(
+          GeneratedNetwork.class.getClassLoader(), classBytes);
+      return (GeneratedNetwork) loader.loadClass(qualifiedName)
+          .getDeclaredConstructor()
+          .newInstance();
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Failed to load generated network", e);
+    }
+  }
+
+  private static String activationExpression(DoubleUnaryOperator activation, String sum) {
+    if (activation == Activation.LINEAR) {
+      return sum;
+    }
+    if (activation == Activation.RELU) {
+      return "Math.max(0, " + sum + ")";
+    }
+    if (activation == Activation.SIGMOID) {
+      return "1d / (1d + Math.exp(-(" + sum + ")))";
+    }
+    if (activation == Activation.TANH) {
+      return "Math.tanh(" + sum + ")";
+    }
+    if (activation instanceof Activation) {
+      return Activation.class.getName() + "." + ((Activation) activation).name()
+          + ".applyAsDouble(" + sum + ")";
+    }
+    throw new IllegalArgumentException("Unsupported activation function");
+  }
+
+  private static String doubleLiteral(double value) {
+    if (Double.isNaN(value)) {
+      return "Double.NaN";
+    }
+    if (Double.isInfinite(value)) {
+      return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+    }
+    // Parenthesised so that negative weights read clearly after a '*'
+    return "(" + Double.toString(value) + "d)";
+  }
+
+  /**
+   * @return classpath for compiling generated networks: the location of this library followed by
+   *     the application classpath, as the library may be loaded from somewhere else (e.g. a plugin
+   *     or container class loader)
+   */
+  private static String compilationClasspath() {
+    final String applicationClasspath = System.getProperty("java.class.path");
+    final CodeSource codeSource;
+    try {
+      codeSource = GeneratedNetwork.class.getProtectionDomain().getCodeSource();
+    } catch (SecurityException e) {
+      throw new IllegalStateException(
+          "Not permitted to locate this library to compile generated networks against", e);
+    }
+    if (codeSource == null || codeSource.getLocation() == null) {
+      // Loaded without a code source (e.g. by the bootstrap loader): only the classpath is known
+      return applicationClasspath;
+    }
+
+    final String libraryLocation;
+    try {
+      libraryLocation = Paths.get(codeSource.getLocation().toURI()).toString();
+    } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+      throw new IllegalStateException(
+          "Cannot locate this library to compile generated networks against: "
+              + codeSource.getLocation(), e);
+    }
+    return applicationClasspath.isEmpty()
+        ? libraryLocation
+        : libraryLocation + File.pathSeparator + applicationClasspath;
+  }
+
+  /**
+   * GeneratedNetwork calculating with a CompiledNetwork, for networks too large to generate
+   */
+  private static class CompiledNetworkAdapter extends GeneratedNetwork {
+
+    private final CompiledNetwork network;
+    private final ThreadLocal<EvaluationContext> contexts;
+
+    CompiledNetworkAdapter(CompiledNetwork network) {
+      super(network.getNumInputs(), network.getNumOutputs());
+      this.network = network;
+      this.contexts = ThreadLocal.withInitial(network::createEvaluationContext);
+    }
+
+    @Override
+    protected void calculate(double[] inputs, double[] outputs) {
+      network.calculateOutputs(inputs, outputs, contexts.get());
+    }
+  }
+
+  /**
+   * In-memory Java source file
+   */
+  private static class SourceFile extends SimpleJavaFileObject {
+
+    private final String source;
+
+    SourceFile(String qualifiedName, String source) {
+      super(URI.create("string:///" + qualifiedName.replace('.', '/') + Kind.SOURCE.extension),
+          Kind.SOURCE);
+      this.source = source;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return source;
+    }
+  }
+
+  /**
+   * File manager that captures compiled classes in memory rather than writing them to disk
+   */
+  private static class InMemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+
+    private final Map<String, ByteArrayOutputStream> classBytes = new HashMap<>();
+
+    InMemoryFileManager(JavaFileManager fileManager) {
+      super(fileManager);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className,
+        JavaFileObject.Kind kind, FileObject sibling) {
+
+      return new SimpleJavaFileObject(
+          URI.create("bytes:///" + className.replace('.', '/') + kind.extension), kind) {
+        @Override
+        public OutputStream openOutputStream() {
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          classBytes.put(className, bytes);
+          return bytes;
+        }
+      };
+    }
+  }
+
+  /**
+   * Class loader that defines the generated classes from their compiled bytes
+   */
+  private static class GeneratedClassLoader extends ClassLoader {
+
+    private final Map<String, ByteArrayOutputStream> classBytes;
+
+    GeneratedClassLoader(ClassLoader parent, Map<String, ByteArrayOutputStream> classBytes) {
+      super(parent);
+      this.classBytes = classBytes;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      final ByteArrayOutputStream bytes = classBytes.get(name);
+      if (bytes == null) {
+        return super.findClass(name);
+      }
+      final byte[] byteArray = bytes.toByteArray();
+      return defineClass(name, byteArray, 0, byteArray.length);
+    }
+  }
+}
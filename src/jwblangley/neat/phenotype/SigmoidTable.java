@@ -0,0 +1,55 @@
+package jwblangley.neat.phenotype;
+
+/**
+ * Lookup table for a fast approximation of the sigmoid function. The table samples sigmoid at a
+ * fixed step over [-RANGE, RANGE] and linearly interpolates between samples. Outside of that range
+ * the result is clamped to 0 or 1.
+ *
+ * Linear interpolation error is bounded by step^2 / 8 * max|sigmoid''| (~0.0962), which for a step
+ * of 1/64 is below 3e-6. Clamping contributes at most sigmoid(-RANGE) (~1.2e-7)
+ */
+final class SigmoidTable {
+
+  /**
+   * Maximum absolute difference between sigmoid and its approximation
+   */
+  static final double MAX_ERROR = 5e-6;
+
+  private static final double RANGE = 16d;
+  private static final int STEPS_PER_UNIT = 64;
+
+  private static final double[] TABLE = new double[(int) (2 * RANGE * STEPS_PER_UNIT) + 1];
+
+  static {
+    for (int i = 0; i < TABLE.length; i++) {
+      final double x = i / (double) STEPS_PER_UNIT - RANGE;
+      TABLE[i] = 1d / (1d + Math.exp(-x));
+    }
+  }
+
+  private SigmoidTable() {
+  }
+
+  /**
+   * Approximate sigmoid(x) to within MAX_ERROR
+   *
+   * @param x the given input
+   * @return the approximated result
+   */
+  static double sigmoid(double x) {
+    if (x <= -RANGE) {
+      return 0d;
+    }
+    if (x >= RANGE) {
+      return 1d;
+    }
+    if (Double.isNaN(x)) {
+      return x;
+    }
+
+    final double position = (x + RANGE) * STEPS_PER_UNIT;
+    final int index = (int) position;
+    final double fraction = position - index;
+    return TABLE[index] + (TABLE[index + 1] - TABLE[index]) * fraction;
+  }
+}
@@ -0,0 +1,68 @@
+package jwblangley.neat.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Discrete probability distribution over indices, each chosen with probability proportional to its
+ * (non-negative) weight. The cumulative probabilities are computed once, so each sample is a binary
+ * search rather than a pass over every weight
+ */
+public class CumulativeDistribution {
+
+  /**
+   * cumulativeProbabilities[i] is the probability of sampling any index up to and including i
+   */
+  private final double[] cumulativeProbabilities;
+
+  /**
+   * Construct a new CumulativeDistribution
+   *
+   * @param weights non-negative weight of each index
+   */
+  public CumulativeDistribution(double[] weights) {
+    if (weights.length == 0) {
+      throw new IllegalArgumentException("Distribution must have at least one weight");
+    }
+
+    // Compensated summation, so the total does not drift with the number of weights
+    final double total = Arrays.stream(weights).sum();
+
+    cumulativeProbabilities = new double[weights.length];
+    double acc = 0;
+    for (int i = 0; i < weights.length; i++) {
+      acc += weights[i] / total;
+      cumulativeProbabilities[i] = acc;
+    }
+  }
+
+  /**
+   * @return the number of indices in the distribution
+   */
+  public int size() {
+    return cumulativeProbabilities.length;
+  }
+
+  /**
+   * @param random seeded Random object
+   * @return a random index, biased by weight
+   */
+  public int sample(Random random) {
+    final double target = random.nextDouble();
+
+    // Find the first index whose cumulative probability exceeds the target
+    int low = 0;
+    int high = cumulativeProbabilities.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (cumulativeProbabilities[mid] > target) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+
+    // Rounding (or weights that are all zero) can leave the target unreached: take the last index
+    return Math.min(low, cumulativeProbabilities.length - 1);
+  }
+}
@@ -1,11 +1,10 @@
 package jwblangley.neat.util;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
- * Utility class for calculating the number of excess and disjoint integers two lists of integers
+ * Utility class for calculating the number of excess and disjoint integers two lists of integers.
+ * Genotypes should prefer GeneAlignment, which works on already sorted primitive arrays
  */
 public class DisjointExcess {
 
@@ -18,37 +17,21 @@ public class DisjointExcess {
    * between the two lists
    */
   public static ImmutableHomogeneousPair<Integer> calculate(List<Integer> xs, List<Integer> ys) {
-    // Don't modify original lists
-    xs = new ArrayList<>(xs);
-    ys = new ArrayList<>(ys);
+    final int[] sortedXs = sortedDistinct(xs);
+    final int[] sortedYs = sortedDistinct(ys);
 
-    // Ascending sort
-    Collections.sort(xs);
-    Collections.sort(ys);
+    final GeneAlignment alignment = GeneAlignment.align(
+        sortedXs, new double[sortedXs.length], sortedYs, new double[sortedYs.length]);
 
-    final int maxInXs = xs.get(xs.size() - 1);
-    final int maxInYs = ys.get(ys.size() - 1);
-
-    final int max = Math.max(maxInXs, maxInYs);
-    final int minMax = Math.min(maxInXs, maxInYs);
-
-    int disjoints = 0;
-    int excesses = 0;
-    for (int i = 0; i <= max; i++) {
-      if (i <= minMax) {
-        // Not excess
-        if (xs.contains(i) ^ ys.contains(i)) {
-          disjoints++;
-        }
-      } else {
-        // Excess
-        if (xs.contains(i) || ys.contains(i)) {
-          excesses++;
-        }
-      }
-    }
+    return new ImmutableHomogeneousPair<>(alignment.getDisjoints(), alignment.getExcesses());
+  }
 
-    return new ImmutableHomogeneousPair<>(disjoints, excesses);
+  private static int[] sortedDistinct(List<Integer> values) {
+    return values.stream()
+        .mapToInt(Integer::intValue)
+        .sorted()
+        .distinct()
+        .toArray();
   }
 
 }
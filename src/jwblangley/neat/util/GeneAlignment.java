@@ -0,0 +1,83 @@
+package jwblangley.neat.util;
+
+/**
+ * Result of aligning the genes of two genotypes by innovation marker: the number of disjoint,
+ * excess and matching genes, and the total absolute weight difference between matching genes
+ */
+public class GeneAlignment {
+
+  private final int disjoints;
+  private final int excesses;
+  private final int matching;
+  private final double totalWeightDifference;
+
+  private GeneAlignment(int disjoints, int excesses, int matching, double totalWeightDifference) {
+    this.disjoints = disjoints;
+    this.excesses = excesses;
+    this.matching = matching;
+    this.totalWeightDifference = totalWeightDifference;
+  }
+
+  /**
+   * Align two genotypes' genes in a single merge pass. Innovation markers must be in ascending
+   * order with no repeats, and weights[i] must be the weight of the gene with innovations[i]
+   *
+   * @param firstInnovations  ascending innovation markers of the first genotype
+   * @param firstWeights      weights of the first genotype's genes
+   * @param secondInnovations ascending innovation markers of the second genotype
+   * @param secondWeights     weights of the second genotype's genes
+   * @return alignment of the two genotypes
+   */
+  public static GeneAlignment align(int[] firstInnovations, double[] firstWeights,
+      int[] secondInnovations, double[] secondWeights) {
+
+    int disjoints = 0;
+    int matching = 0;
+    double totalWeightDifference = 0;
+
+    int i = 0;
+    int j = 0;
+    while (i < firstInnovations.length && j < secondInnovations.length) {
+      if (firstInnovations[i] < secondInnovations[j]) {
+        disjoints++;
+        i++;
+      } else if (firstInnovations[i] > secondInnovations[j]) {
+        disjoints++;
+        j++;
+      } else {
+        matching++;
+        totalWeightDifference += Math.abs(firstWeights[i] - secondWeights[j]);
+        i++;
+        j++;
+      }
+    }
+
+    // Whatever remains lies beyond the greatest innovation of the other genotype
+    final int excesses = (firstInnovations.length - i) + (secondInnovations.length - j);
+
+    return new GeneAlignment(disjoints, excesses, matching, totalWeightDifference);
+  }
+
+  public int getDisjoints() {
+    return disjoints;
+  }
+
+  public int getExcesses() {
+    return excesses;
+  }
+
+  public int getMatching() {
+    return matching;
+  }
+
+  public double getTotalWeightDifference() {
+    return totalWeightDifference;
+  }
+
+  /**
+   * @return average absolute weight difference between matching genes. NaN if there are none
+   */
+  public double getAverageWeightDifference() {
+    return totalWeightDifference / ((double) matching);
+  }
+}
@@ -1,13 +1,25 @@
 package jwblangley.neat.evolution;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.Collections;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import jwblangley.neat.genotype.ConnectionGenotype;
 import jwblangley.neat.genotype.NetworkGenotype;
 import jwblangley.neat.genotype.NeuronGenotype;
 import jwblangley.neat.genotype.NeuronLayer;
+import org.junit.Assume;
 import org.junit.Test;
 
 public class EvolutionTest {
@@ -198,4 +210,226 @@ public class EvolutionTest {
     assertEquals(target, weightSum, tolerance);
   }
 
+  private static NetworkGenotype singleConnectionNetwork() {
+    NetworkGenotype network = new NetworkGenotype();
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    network.addNeuron(input);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    network.addNeuron(output);
+    network.addConnection(
+        new ConnectionGenotype(input.getUid(), output.getUid(), 0, 0.5, true));
+    return network;
+  }
+
+  @Test
+  public void evaluationThreadsAreKeptAcrossGenerations() {
+    final int numThreads = 3;
+    final Set<Thread> evaluationThreads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    Evolution evolution = new Evolution(50, 4, singleConnectionNetwork(),
+        new InnovationGenerator(1), numThreads, geno -> {
+      evaluationThreads.add(Thread.currentThread());
+      return 1d;
+    });
+
+    Random random = new Random(3);
+    for (int i = 0; i < 10; i++) {
+      evolution.evolve(random);
+    }
+    evolution.shutdown();
+
+    assertTrue(evaluationThreads.size() <= numThreads);
+  }
+
+  @Test
+  public void closingReleasesEvaluationThreads() throws InterruptedException {
+    final Set<Thread> evaluationThreads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    try (Evolution evolution = new Evolution(50, 4, singleConnectionNetwork(),
+        new InnovationGenerator(1), 3, geno -> {
+      evaluationThreads.add(Thread.currentThread());
+      return 1d;
+    })) {
+      evolution.evolve(new Random(3));
+    }
+
+    for (Thread thread : evaluationThreads) {
+      thread.join(5000);
+      assertFalse(thread.isAlive());
+    }
+  }
+
+  @Test
+  public void givenEvaluationExecutorIsUsed() {
+    final int populationSize = 50;
+    final int numGenerations = 5;
+    final AtomicInteger executions = new AtomicInteger();
+    final Executor executor = task -> {
+      executions.incrementAndGet();
+      task.run();
+    };
+
+    Evolution evolution = new Evolution(populationSize, 4, singleConnectionNetwork(),
+        new InnovationGenerator(1), 1, geno -> 1d);
+    evolution.setEvaluationExecutor(executor);
+
+    Random random = new Random(3);
+    for (int i = 0; i < numGenerations; i++) {
+      evolution.evolve(random);
+    }
+
+    assertEquals(populationSize * numGenerations, executions.get());
+  }
+
+  @Test
+  public void errorInEvaluationIsRethrown() {
+    final Error error = new Error("Evaluation error");
+    final AtomicInteger evaluations = new AtomicInteger();
+
+    Evolution evolution = new Evolution(50, 4, singleConnectionNetwork(),
+        new InnovationGenerator(1), 4, geno -> {
+      if (evaluations.incrementAndGet() == 10) {
+        throw error;
+      }
+      return 1d;
+    });
+
+    try {
+      evolution.evolve(new Random(3));
+      fail("Expected the evaluation error to be rethrown");
+    } catch (Error e) {
+      assertSame(error, e);
+    } finally {
+      evolution.shutdown();
+    }
+  }
+
+  @Test
+  public void virtualThreadEvaluationMatchesPooled() {
+    Evolution pooled = new Evolution(50, 4, singleConnectionNetwork(),
+        new InnovationGenerator(1), 2, geno -> geno.getConnections().get(0).getWeight() + 1);
+    Evolution virtual = new Evolution(50, 4, singleConnectionNetwork(),
+        new InnovationGenerator(1), 2, geno -> geno.getConnections().get(0).getWeight() + 1);
+    try {
+      virtual.useVirtualThreads();
+    } catch (UnsupportedOperationException e) {
+      Assume.assumeNoException(e);
+    }
+
+    Random pooledRandom = new Random(11);
+    Random virtualRandom = new Random(11);
+    for (int i = 0; i < 10; i++) {
+      pooled.evolve(pooledRandom);
+      virtual.evolve(virtualRandom);
+      assertEquals(pooled.getHighestFitness(), virtual.getHighestFitness(), 0d);
+    }
+    pooled.shutdown();
+    virtual.shutdown();
+  }
+
+  @Test
+  public void fittestGenotypeIsIndependentOfThreadCount() {
+    final SingleEvaluator evaluator = geno -> {
+      double weightSum = 0;
+      for (ConnectionGenotype connection : geno.getConnections()) {
+        if (connection.isEnabled()) {
+          weightSum += Math.abs(connection.getWeight());
+        }
+      }
+      return 1000d / Math.abs(weightSum - 100);
+    };
+
+    Evolution serial = new Evolution(100, 5, singleConnectionNetwork(),
+        new InnovationGenerator(1), 1, evaluator);
+    Evolution parallel = new Evolution(100, 5, singleConnectionNetwork(),
+        new InnovationGenerator(1), 8, evaluator);
+
+    Random serialRandom = new Random(5);
+    Random parallelRandom = new Random(5);
+    for (int i = 0; i < 20; i++) {
+      serial.evolve(serialRandom);
+      parallel.evolve(parallelRandom);
+
+      assertEquals(serial.getHighestFitness(), parallel.getHighestFitness(), 0d);
+      assertEquals(serial.getFittestGenotype().getConnections().size(),
+          parallel.getFittestGenotype().getConnections().size());
+      assertEquals(evaluator.evaluate(parallel.getFittestGenotype()),
+          parallel.getHighestFitness(), 0d);
+    }
+    serial.shutdown();
+    parallel.shutdown();
+  }
+
+  @Test
+  public void parallelSpeciationIsIndependentOfThreadCount() throws Exception {
+    final int populationSize = 2 * Evolution.PARALLEL_SPECIATION_SIZE;
+    final BulkEvaluator evaluator = genos -> genos.stream()
+        .map(geno -> geno.getConnections().stream()
+            .filter(ConnectionGenotype::isEnabled)
+            .mapToDouble(connection -> Math.abs(connection.getWeight()))
+            .sum() + 1)
+        .collect(Collectors.toList());
+
+    Evolution serial = new Evolution(populationSize, 10, singleConnectionNetwork(),
+        new InnovationGenerator(1), evaluator);
+    Evolution parallel = new Evolution(populationSize, 10, singleConnectionNetwork(),
+        new InnovationGenerator(1), evaluator);
+
+    // Parallel streams run in the pool of the task that starts them
+    final ForkJoinPool serialPool = new ForkJoinPool(1);
+    final ForkJoinPool parallelPool = new ForkJoinPool(4);
+    Random serialRandom = new Random(9);
+    Random parallelRandom = new Random(9);
+    for (int i = 0; i < 15; i++) {
+      serialPool.submit(() -> serial.evolve(serialRandom)).get();
+      parallelPool.submit(() -> parallel.evolve(parallelRandom)).get();
+
+      assertEquals(serial.getNumberOfSpecies(), parallel.getNumberOfSpecies());
+      assertArrayEquals(serial.getSpeciesAssignments(), parallel.getSpeciesAssignments());
+      assertEquals(serial.getHighestFitness(), parallel.getHighestFitness(), 0d);
+    }
+    serialPool.shutdown();
+    parallelPool.shutdown();
+  }
+
+  @Test
+  public void parallelReproductionIsIndependentOfThreadCount() throws Exception {
+    final int populationSize = 2 * Evolution.PARALLEL_REPRODUCTION_SIZE;
+    final BulkEvaluator evaluator = genos -> genos.stream()
+        .map(geno -> 1000d / Math.abs(geno.getConnections().stream()
+            .filter(ConnectionGenotype::isEnabled)
+            .mapToDouble(connection -> Math.abs(connection.getWeight()))
+            .sum() - 100))
+        .collect(Collectors.toList());
+
+    Evolution serial = new Evolution(populationSize, 10, singleConnectionNetwork(),
+        new InnovationGenerator(1), evaluator);
+    Evolution parallel = new Evolution(populationSize, 10, singleConnectionNetwork(),
+        new InnovationGenerator(1), evaluator);
+
+    // Parallel streams run in the pool of the task that starts them
+    final ForkJoinPool serialPool = new ForkJoinPool(1);
+    final ForkJoinPool parallelPool = new ForkJoinPool(4);
+    Random serialRandom = new Random(13);
+    Random parallelRandom = new Random(13);
+    for (int i = 0; i < 15; i++) {
+      serialPool.submit(() -> serial.evolve(serialRandom)).get();
+      parallelPool.submit(() -> parallel.evolve(parallelRandom)).get();
+
+      assertEquals(serial.getHighestFitness(), parallel.getHighestFitness(), 0d);
+      assertEquals(serial.getNumberOfSpecies(), parallel.getNumberOfSpecies());
+      final NetworkGenotype serialFittest = serial.getFittestGenotype();
+      final NetworkGenotype parallelFittest = parallel.getFittestGenotype();
+      assertEquals(serialFittest.getConnections().size(),
+          parallelFittest.getConnections().size());
+      for (int c = 0; c < serialFittest.getConnections().size(); c++) {
+        assertEquals(serialFittest.getConnections().get(c).getInnovationMarker(),
+            parallelFittest.getConnections().get(c).getInnovationMarker());
+        assertEquals(serialFittest.getConnections().get(c).getWeight(),
+            parallelFittest.getConnections().get(c).getWeight(), 0d);
+      }
+    }
+    serialPool.shutdown();
+    parallelPool.shutdown();
+  }
 }
@@ -0,0 +1,53 @@
+package jwblangley.neat.evolution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import jwblangley.neat.evolution.InnovationRegistry.NeuronSplit;
+import org.junit.Test;
+
+public class InnovationRegistryTest {
+
+  @Test
+  public void sameConnectionGetsSameInnovation() {
+    InnovationRegistry innovations = new InnovationRegistry(new InnovationGenerator());
+
+    final int first = innovations.connectionInnovation(0, 1);
+    assertEquals(first, innovations.connectionInnovation(0, 1));
+    assertNotEquals(first, innovations.connectionInnovation(1, 0));
+    assertNotEquals(first, innovations.connectionInnovation(0, 2));
+  }
+
+  @Test
+  public void sameSplitGetsSameNeuronAndInnovations() {
+    InnovationRegistry innovations = new InnovationRegistry(new InnovationGenerator());
+
+    NeuronSplit split = innovations.neuronSplit(5);
+    assertSame(split, innovations.neuronSplit(5));
+    assertNotEquals(split.getFromInnovationMarker(), split.getToInnovationMarker());
+    assertNotEquals(split.getNeuron().getUid(), innovations.neuronSplit(6).getNeuron().getUid());
+  }
+
+  @Test
+  public void clearForgetsMutationsWithoutReusingMarkers() {
+    InnovationRegistry innovations = new InnovationRegistry(new InnovationGenerator());
+
+    final int before = innovations.connectionInnovation(0, 1);
+    innovations.clear();
+    final int after = innovations.connectionInnovation(0, 1);
+    assertEquals(before + 1, after);
+  }
+
+  @Test
+  public void innovationsAreDense() {
+    InnovationGenerator innovation = new InnovationGenerator();
+    InnovationRegistry innovations = new InnovationRegistry(innovation);
+
+    for (int i = 0; i < 10; i++) {
+      innovations.connectionInnovation(0, 1);
+      innovations.connectionInnovation(0, 2);
+    }
+    assertEquals(2, innovation.next());
+  }
+}
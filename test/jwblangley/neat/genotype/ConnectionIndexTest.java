@@ -0,0 +1,70 @@
+package jwblangley.neat.genotype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Optional;
+import org.junit.Test;
+
+public class ConnectionIndexTest {
+
+  @Test
+  public void keysAreUniqueToOrderedPairs() {
+    assertNotEquals(ConnectionIndex.key(1, 2), ConnectionIndex.key(2, 1));
+    assertNotEquals(ConnectionIndex.key(0, -1), ConnectionIndex.key(-1, 0));
+    assertEquals(ConnectionIndex.key(7, 9), ConnectionIndex.key(7, 9));
+  }
+
+  @Test
+  public void indexFindsAddedConnections() {
+    ConnectionIndex index = new ConnectionIndex();
+    for (int from = 0; from < 50; from++) {
+      for (int to = 0; to < 50; to++) {
+        if ((from + to) % 3 == 0) {
+          index.add(new ConnectionGenotype(from, to, from * 50 + to, 0, true));
+        }
+      }
+    }
+
+    for (int from = 0; from < 50; from++) {
+      for (int to = 0; to < 50; to++) {
+        assertEquals((from + to) % 3 == 0, index.contains(from, to));
+      }
+    }
+    assertEquals(3 * 50 + 6, index.get(3, 6).getInnovationMarker());
+    assertNull(index.get(50, 50));
+  }
+
+  @Test
+  public void lowestInnovationMarkerIsKeptForDuplicatePairs() {
+    ConnectionGenotype later = new ConnectionGenotype(1, 2, 5, 0, true);
+    ConnectionGenotype earlier = new ConnectionGenotype(1, 2, 3, 0, true);
+
+    ConnectionIndex index = new ConnectionIndex(Arrays.asList(later, earlier));
+
+    assertEquals(1, index.size());
+    assertSame(earlier, index.get(1, 2));
+  }
+
+  @Test
+  public void networkIndexIsUpdatedAsConnectionsAreAdded() {
+    NetworkGenotype network = new NetworkGenotype();
+    network.addConnection(new ConnectionGenotype(1, 2, 0, 0, true));
+
+    assertTrue(network.getConnection(1, 2).isPresent());
+    assertFalse(network.getConnection(2, 3).isPresent());
+
+    ConnectionGenotype added = new ConnectionGenotype(2, 3, 1, 0, true);
+    network.addConnection(added);
+
+    Optional<ConnectionGenotype> result = network.getConnection(2, 3);
+    assertTrue(result.isPresent());
+    assertSame(added, result.get());
+  }
+
+}
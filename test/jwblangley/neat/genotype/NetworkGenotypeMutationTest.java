@@ -3,10 +3,12 @@ package jwblangley.neat.genotype;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 import java.util.Random;
 import jwblangley.neat.evolution.InnovationGenerator;
+import jwblangley.neat.evolution.InnovationRegistry;
 import org.junit.Test;
 
 public class NetworkGenotypeMutationTest {
@@ -252,6 +254,65 @@ public class NetworkGenotypeMutationTest {
     assertEquals(targetWeight, firstConnection.getWeight() * secondConnection.getWeight(), DELTA);
   }
 
+  @Test
+  public void identicalMutationsShareInnovations() {
+    InnovationGenerator innovation = new InnovationGenerator();
+    InnovationRegistry innovations = new InnovationRegistry(innovation);
+
+    // Generated uids, as new neurons added by the mutations must not clash with them
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    NetworkGenotype first = new NetworkGenotype();
+    NetworkGenotype second = new NetworkGenotype();
+    for (NetworkGenotype network : new NetworkGenotype[]{first, second}) {
+      network.addNeuron(input);
+      network.addNeuron(output);
+    }
+
+    assertTrue(first.addConnectionMutation(new Random(1), innovations, 1000));
+    assertTrue(second.addConnectionMutation(new Random(2), innovations, 1000));
+    first.addNeuronMutation(new Random(3), innovations);
+    second.addNeuronMutation(new Random(4), innovations);
+
+    assertEquals(3, first.getConnections().size());
+    for (int i = 0; i < 3; i++) {
+      ConnectionGenotype firstConnection = first.getConnections().get(i);
+      ConnectionGenotype secondConnection = second.getConnections().get(i);
+      assertEquals(firstConnection.getInnovationMarker(), secondConnection.getInnovationMarker());
+      assertEquals(firstConnection.getNeuronFrom(), secondConnection.getNeuronFrom());
+      assertEquals(firstConnection.getNeuronTo(), secondConnection.getNeuronTo());
+    }
+    assertEquals(first.getNeurons().get(2).getUid(), second.getNeurons().get(2).getUid());
+  }
+
+  @Test
+  public void repeatedSplitInOneNetworkIsANewInnovation() {
+    InnovationRegistry innovations = new InnovationRegistry(new InnovationGenerator());
+    // Always split the first connection, even once it is disabled
+    Random random = new Random() {
+      @Override
+      public int nextInt(int bound) {
+        return 0;
+      }
+    };
+
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    NetworkGenotype network = new NetworkGenotype();
+    network.addNeuron(input);
+    network.addNeuron(output);
+    network.addConnection(
+        new ConnectionGenotype(input.getUid(), output.getUid(), innovations.next(), 0.5, true));
+
+    network.addNeuronMutation(random, innovations);
+    network.addNeuronMutation(random, innovations);
+
+    assertEquals(4, network.getNeurons().stream().mapToInt(NeuronGenotype::getUid).distinct()
+        .count());
+    assertEquals(5, network.getConnections().stream()
+        .mapToInt(ConnectionGenotype::getInnovationMarker).distinct().count());
+  }
+
   @Test
   public void weightMutationChangesWeight() {
     InnovationGenerator innovation = new InnovationGenerator();
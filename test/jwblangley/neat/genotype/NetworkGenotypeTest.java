@@ -2,10 +2,20 @@ package jwblangley.neat.genotype;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import jwblangley.neat.evolution.InnovationGenerator;
 import org.junit.Test;
 
 public class NetworkGenotypeTest {
@@ -299,4 +309,249 @@ public class NetworkGenotypeTest {
         NetworkGenotype.compatibilityDistance(network, newNetwork), DELTA);
   }
 
+  @Test
+  public void connectionsAreKeptSortedByInnovationMarker() {
+    NetworkGenotype network = new NetworkGenotype();
+    network.addConnection(new ConnectionGenotype(1, 2, 5, 0, true));
+    network.addConnection(new ConnectionGenotype(1, 3, 2, 0, true));
+    network.addConnection(new ConnectionGenotype(2, 3, 9, 0, true));
+    network.addConnection(new ConnectionGenotype(3, 4, 3, 0, true));
+
+    assertEquals(2, network.getConnections().get(0).getInnovationMarker());
+    assertEquals(3, network.getConnections().get(1).getInnovationMarker());
+    assertEquals(5, network.getConnections().get(2).getInnovationMarker());
+    assertEquals(9, network.getConnections().get(3).getInnovationMarker());
+    assertEquals(3, network.getConnectionByInnovationMarker(3).get().getNeuronFrom());
+  }
+
+  @Test
+  public void crossoverTakesMatchingGenesFromEitherParentAndOthersFromFittest() {
+    NetworkGenotype fittest = new NetworkGenotype();
+    fittest.addNeuron(new NeuronGenotype(NeuronLayer.INPUT, 0));
+    fittest.addNeuron(new NeuronGenotype(NeuronLayer.OUTPUT, 1));
+    fittest.addConnection(new ConnectionGenotype(0, 1, 1, 1, true));
+    fittest.addConnection(new ConnectionGenotype(0, 1, 3, 1, true));
+    fittest.addConnection(new ConnectionGenotype(0, 1, 6, 1, true));
+
+    NetworkGenotype second = new NetworkGenotype();
+    second.addConnection(new ConnectionGenotype(0, 1, 1, 2, true));
+    second.addConnection(new ConnectionGenotype(0, 1, 2, 2, true));
+    second.addConnection(new ConnectionGenotype(0, 1, 6, 2, true));
+    second.addConnection(new ConnectionGenotype(0, 1, 8, 2, true));
+
+    boolean inheritedFromSecond = false;
+    Random random = new Random(3);
+    for (int trial = 0; trial < 20; trial++) {
+      NetworkGenotype child = NetworkGenotype.crossover(fittest, second, random);
+
+      assertEquals(3, child.getConnections().size());
+      assertEquals(1, child.getConnections().get(0).getInnovationMarker());
+      assertEquals(3, child.getConnections().get(1).getInnovationMarker());
+      assertEquals(6, child.getConnections().get(2).getInnovationMarker());
+      // Disjoint gene always from fittest
+      assertEquals(1, child.getConnections().get(1).getWeight(), DELTA);
+      inheritedFromSecond |= child.getConnections().get(0).getWeight() == 2
+          || child.getConnections().get(2).getWeight() == 2;
+    }
+    assertTrue(inheritedFromSecond);
+  }
+
+  @Test
+  public void isCompatibleAgreesWithCompatibilityDistance() {
+    Random random = new Random(11);
+
+    for (int trial = 0; trial < 200; trial++) {
+      NetworkGenotype first = new NetworkGenotype();
+      NetworkGenotype second = new NetworkGenotype();
+      for (int innovation = 0; innovation < 40; innovation++) {
+        if (random.nextInt(3) != 0) {
+          first.addConnection(
+              new ConnectionGenotype(0, 1, innovation, random.nextGaussian(), true));
+        }
+        if (random.nextInt(3) != 0) {
+          second.addConnection(
+              new ConnectionGenotype(0, 1, innovation, random.nextGaussian(), true));
+        }
+      }
+      final double distance = NetworkGenotype.compatibilityDistance(first, second);
+
+      for (double threshold = 0.05; threshold < 2; threshold *= 1.3) {
+        assertEquals(distance < threshold,
+            NetworkGenotype.isCompatible(first, second, threshold));
+      }
+      assertFalse(NetworkGenotype.isCompatible(first, second, distance));
+      assertEquals(distance < Math.nextUp(distance),
+          NetworkGenotype.isCompatible(first, second, Math.nextUp(distance)));
+    }
+  }
+
+  @Test
+  public void isCompatibleRejectsEarly() {
+    NetworkGenotype first = new NetworkGenotype();
+    NetworkGenotype second = new NetworkGenotype();
+    for (int innovation = 0; innovation < 100; innovation++) {
+      first.addConnection(new ConnectionGenotype(0, 1, 2 * innovation, 0, true));
+      second.addConnection(new ConnectionGenotype(0, 1, 2 * innovation + 1, 0, true));
+    }
+
+    assertFalse(NetworkGenotype.isCompatible(first, second, 0.5));
+    assertTrue(NetworkGenotype.isCompatible(first, first, 0.5));
+  }
+
+  @Test
+  public void circularIfConnectedStaysCorrectAsConnectionsAreAdded() {
+    Random random = new Random(5);
+    final int numNeurons = 30;
+
+    NetworkGenotype network = new NetworkGenotype();
+    List<NeuronGenotype> neurons = new ArrayList<>();
+    for (int uid = 0; uid < numNeurons; uid++) {
+      NeuronGenotype neuron = new NeuronGenotype(NeuronLayer.HIDDEN, uid);
+      neurons.add(neuron);
+      network.addNeuron(neuron);
+    }
+
+    int innovation = 0;
+    for (int attempt = 0; attempt < 400; attempt++) {
+      NeuronGenotype from = neurons.get(random.nextInt(numNeurons));
+      NeuronGenotype to = neurons.get(random.nextInt(numNeurons));
+
+      final boolean expected = from.equals(to) || reaches(network, to.getUid(), from.getUid());
+      assertEquals(expected, network.circularIfConnected(from, to));
+
+      if (!expected) {
+        network.addConnection(
+            new ConnectionGenotype(from.getUid(), to.getUid(), innovation++, 0, true));
+      }
+    }
+  }
+
+  @Test
+  public void connectionsAddedAfterCheckingAreConsidered() {
+    NetworkGenotype network = new NetworkGenotype();
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT, 0);
+    network.addNeuron(input);
+    NeuronGenotype hidden1 = new NeuronGenotype(NeuronLayer.HIDDEN, 1);
+    network.addNeuron(hidden1);
+    NeuronGenotype hidden2 = new NeuronGenotype(NeuronLayer.HIDDEN, 2);
+    network.addNeuron(hidden2);
+
+    assertFalse(network.circularIfConnected(hidden2, hidden1));
+
+    network.addConnection(
+        new ConnectionGenotype(input.getUid(), hidden1.getUid(), 0, 0, true));
+    network.addConnection(
+        new ConnectionGenotype(hidden1.getUid(), hidden2.getUid(), 1, 0, true));
+
+    assertTrue(network.circularIfConnected(hidden2, hidden1));
+    assertFalse(network.circularIfConnected(input, hidden2));
+  }
+
+  /**
+   * Reference reachability over all (enabled or disabled) connections
+   */
+  private static boolean reaches(NetworkGenotype network, int fromUid, int toUid) {
+    Set<Integer> visited = new HashSet<>();
+    Deque<Integer> stack = new ArrayDeque<>();
+    stack.push(fromUid);
+    while (!stack.isEmpty()) {
+      final int current = stack.pop();
+      if (current == toUid) {
+        return true;
+      }
+      if (visited.add(current)) {
+        for (ConnectionGenotype connection : network.getConnections()) {
+          if (connection.getNeuronFrom() == current) {
+            stack.push(connection.getNeuronTo());
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void copyOnWriteSharesGenesUntilMutated() {
+    NetworkGenotype network = new NetworkGenotype();
+    network.addNeuron(new NeuronGenotype(NeuronLayer.INPUT, 0));
+    network.addNeuron(new NeuronGenotype(NeuronLayer.OUTPUT, 1));
+    network.addConnection(new ConnectionGenotype(0, 1, 0, 0.5, true));
+
+    NetworkGenotype copy = NetworkGenotype.copyOnWrite(network);
+
+    assertSame(network.getConnections().get(0), copy.getConnections().get(0));
+    assertSame(network.getNeurons().get(0), copy.getNeurons().get(0));
+
+    copy.weightMutation(new Random(1));
+
+    assertNotSame(network.getConnections().get(0), copy.getConnections().get(0));
+    assertEquals(0.5, network.getConnections().get(0).getWeight(), 0d);
+    assertNotEquals(0.5, copy.getConnections().get(0).getWeight(), 0d);
+    assertFalse(copy.getConnections().get(0).isShared());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void sharedGenesCannotBeModified() {
+    NetworkGenotype network = new NetworkGenotype();
+    network.addNeuron(new NeuronGenotype(NeuronLayer.INPUT, 0));
+    network.addNeuron(new NeuronGenotype(NeuronLayer.OUTPUT, 1));
+    network.addConnection(new ConnectionGenotype(0, 1, 0, 0.5, true));
+
+    NetworkGenotype copy = NetworkGenotype.copyOnWrite(network);
+
+    copy.getConnections().get(0).setWeight(1);
+  }
+
+  @Test
+  public void modifiableConnectionLeavesSharedGeneUnchanged() {
+    NetworkGenotype network = new NetworkGenotype();
+    network.addNeuron(new NeuronGenotype(NeuronLayer.INPUT, 0));
+    network.addNeuron(new NeuronGenotype(NeuronLayer.OUTPUT, 1));
+    network.addConnection(new ConnectionGenotype(0, 1, 0, 0.5, true));
+
+    NetworkGenotype copy = NetworkGenotype.copyOnWrite(network);
+    copy.getModifiableConnection(0).disable();
+
+    assertTrue(network.getConnections().get(0).isEnabled());
+    assertFalse(copy.getConnections().get(0).isEnabled());
+    assertSame(copy.getConnections().get(0), copy.getConnectionByInnovationMarker(0).get());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void connectionsCannotBeModifiedDirectly() {
+    NetworkGenotype network = new NetworkGenotype();
+    network.addNeuron(new NeuronGenotype(NeuronLayer.INPUT, 0));
+    network.addNeuron(new NeuronGenotype(NeuronLayer.OUTPUT, 1));
+
+    network.getConnections().add(new ConnectionGenotype(0, 1, 0, 0.5, true));
+  }
+
+  @Test
+  public void mutatingCrossoverChildLeavesParentsUnchanged() {
+    InnovationGenerator innovation = new InnovationGenerator(10);
+
+    // Generated uids, as new neurons added by the mutations must not clash with them
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    NetworkGenotype parent = new NetworkGenotype();
+    parent.addNeuron(input);
+    parent.addNeuron(output);
+    parent.addConnection(new ConnectionGenotype(input.getUid(), output.getUid(), 0, 0.5, true));
+
+    Random random = new Random(2);
+    NetworkGenotype child = NetworkGenotype.crossover(parent, parent, random);
+    child.addNeuronMutation(random, innovation);
+
+    assertTrue(parent.getConnections().get(0).isEnabled());
+    assertFalse(child.getConnectionByInnovationMarker(0).get().isEnabled());
+    assertEquals(1, parent.getConnections().size());
+    assertEquals(3, child.getConnections().size());
+
+    // Re-enabling through add connection mutation must also copy
+    NetworkGenotype grandchild = NetworkGenotype.crossover(child, child, random);
+    while (!grandchild.getConnectionByInnovationMarker(0).get().isEnabled()) {
+      grandchild.addConnectionMutation(random, innovation, 1);
+    }
+    assertFalse(child.getConnectionByInnovationMarker(0).get().isEnabled());
+  }
 }
@@ -0,0 +1,54 @@
+package jwblangley.neat.genotype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import org.junit.Test;
+
+public class NeuronRegistryTest {
+
+  @Test
+  public void internReturnsFirstRegisteredNeuron() {
+    NeuronRegistry registry = new NeuronRegistry();
+    NeuronGenotype first = new NeuronGenotype(NeuronLayer.HIDDEN, 5);
+    NeuronGenotype second = new NeuronGenotype(NeuronLayer.HIDDEN, 5);
+
+    assertSame(first, registry.intern(first));
+    assertSame(first, registry.intern(second));
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  public void unreferencedNeuronsAreRemoved() {
+    NeuronRegistry registry = new NeuronRegistry();
+    NetworkGenotype network = new NetworkGenotype();
+    network.addNeuron(new NeuronGenotype(NeuronLayer.INPUT, 0));
+    network.addNeuron(new NeuronGenotype(NeuronLayer.OUTPUT, 1));
+    network.internNeurons(registry);
+    registry.intern(new NeuronGenotype(NeuronLayer.HIDDEN, 2));
+
+    registry.removeUnreferenced(Collections.singletonList(network));
+
+    assertEquals(2, registry.size());
+    assertSame(network.getNeurons().get(1),
+        registry.intern(new NeuronGenotype(NeuronLayer.OUTPUT, 1)));
+  }
+
+  @Test
+  public void internedNetworksShareNeurons() {
+    NeuronRegistry registry = new NeuronRegistry();
+    NetworkGenotype first = new NetworkGenotype();
+    first.addNeuron(new NeuronGenotype(NeuronLayer.OUTPUT, 2));
+    first.addNeuron(new NeuronGenotype(NeuronLayer.INPUT, 0));
+    NetworkGenotype second = new NetworkGenotype(first);
+
+    first.internNeurons(registry);
+    second.internNeurons(registry);
+
+    // Neurons are kept in uid order
+    assertEquals(0, second.getNeurons().get(0).getUid());
+    assertSame(first.getNeurons().get(0), second.getNeurons().get(0));
+    assertSame(first.getNeurons().get(1), second.getNeurons().get(1));
+  }
+}
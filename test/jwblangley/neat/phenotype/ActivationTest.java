@@ -1,6 +1,7 @@
 package jwblangley.neat.phenotype;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
@@ -61,4 +62,51 @@ public class ActivationTest {
   public void sigmoidIsPointFiveAtZero() {
     assertEquals(0.5d, Activation.SIGMOID.apply(0d), TOLERANCE);
   }
+
+  @Test
+  public void sigmoidDoesNotOverflowForVeryLargeInputs() {
+    assertEquals(1d, Activation.SIGMOID.apply(1000d), TOLERANCE);
+    assertEquals(0d, Activation.SIGMOID.apply(-1000d), TOLERANCE);
+  }
+
+  @Test
+  public void tanhIsZeroAtZero() {
+    assertEquals(0d, Activation.TANH.apply(0d), TOLERANCE);
+  }
+
+  @Test
+  public void primitiveApplicationMatchesBoxed() {
+    for (Activation activation : Activation.values()) {
+      for (double x = -5d; x <= 5d; x += 0.25d) {
+        assertEquals(activation.apply(x), activation.applyAsDouble(x), 0d);
+      }
+    }
+  }
+
+  @Test
+  public void fastSigmoidIsWithinDocumentedErrorBound() {
+    for (double x = -40d; x <= 40d; x += 0.0001d) {
+      assertEquals(Activation.SIGMOID.applyAsDouble(x), Activation.FAST_SIGMOID.applyAsDouble(x),
+          Activation.FAST_SIGMOID_MAX_ERROR);
+    }
+  }
+
+  @Test
+  public void fastTanhIsWithinDocumentedErrorBound() {
+    for (double x = -20d; x <= 20d; x += 0.0001d) {
+      assertEquals(Activation.TANH.applyAsDouble(x), Activation.FAST_TANH.applyAsDouble(x),
+          Activation.FAST_TANH_MAX_ERROR);
+    }
+  }
+
+  @Test
+  public void fastSigmoidIsPointFiveAtZero() {
+    assertEquals(0.5d, Activation.FAST_SIGMOID.applyAsDouble(0d), TOLERANCE);
+  }
+
+  @Test
+  public void fastApproximationsPropagateNaN() {
+    assertTrue(Double.isNaN(Activation.FAST_SIGMOID.applyAsDouble(Double.NaN)));
+    assertTrue(Double.isNaN(Activation.FAST_TANH.applyAsDouble(Double.NaN)));
+  }
 }
@@ -0,0 +1,52 @@
+package jwblangley.neat.phenotype;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import jwblangley.neat.phenotype.BatchKernel.ScalarBatchKernel;
+import org.junit.Test;
+
+public class BatchKernelTest {
+
+  @Test
+  public void loadedKernelMatchesScalarKernel() {
+    final BatchKernel kernel = BatchKernel.load();
+    final BatchKernel scalar = new ScalarBatchKernel();
+    final Random random = new Random(1);
+
+    final double[] buffer = new double[200];
+    for (int i = 0; i < buffer.length; i++) {
+      buffer[i] = random.nextGaussian() * 100;
+    }
+
+    // Lengths that do and do not fill whole vectors, at aligned and unaligned offsets
+    for (int length : new int[]{0, 1, 3, 8, 13, 64}) {
+      for (int sourceRow : new int[]{0, 5, 64}) {
+        final double[] expected = new double[length];
+        final double[] actual = new double[length];
+        for (int e = 0; e < 10; e++) {
+          final double weight = random.nextGaussian();
+          scalar.multiplyAdd(buffer, sourceRow + e, weight, expected, length);
+          kernel.multiplyAdd(buffer, sourceRow + e, weight, actual, length);
+        }
+        assertArrayEquals(expected, actual, 0d);
+      }
+    }
+  }
+
+  @Test
+  public void vectorKernelCanBeDisabled() {
+    final String previous = System.getProperty(BatchKernel.VECTOR_PROPERTY);
+    System.setProperty(BatchKernel.VECTOR_PROPERTY, "false");
+    try {
+      assertEquals(ScalarBatchKernel.class, BatchKernel.load().getClass());
+    } finally {
+      if (previous == null) {
+        System.clearProperty(BatchKernel.VECTOR_PROPERTY);
+      } else {
+        System.setProperty(BatchKernel.VECTOR_PROPERTY, previous);
+      }
+    }
+  }
+}
@@ -0,0 +1,583 @@
+package jwblangley.neat.phenotype;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import jwblangley.neat.evolution.InnovationGenerator;
+import jwblangley.neat.genotype.ConnectionGenotype;
+import jwblangley.neat.genotype.NetworkGenotype;
+import jwblangley.neat.genotype.NeuronGenotype;
+import jwblangley.neat.genotype.NeuronLayer;
+import org.junit.Test;
+
+public class CompiledNetworkTest {
+
+  final static double TOLERANCE = 0.0000001;
+
+  @Test(expected = InputMismatchException.class)
+  public void cannotProvideWrongNumberOfInputs() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype inputGenotype = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype outputGenotype = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(inputGenotype);
+    networkGenotype.addNeuron(outputGenotype);
+
+    networkGenotype.addConnection(new ConnectionGenotype(inputGenotype.getUid(),
+        outputGenotype.getUid(), 0, 2d, true));
+
+    CompiledNetwork network = CompiledNetwork
+        .createLinearOutputNetworkFromGenotype(networkGenotype);
+    network.calculateOutputs(2.5d, 2.5d);
+  }
+
+  @Test(timeout = 10000)
+  public void neuronsOutOfUidOrderAreCalculatedTopologically() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    // uids deliberately in reverse topological order for the hidden neurons
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT, 0);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT, 1);
+    NeuronGenotype hidden3 = new NeuronGenotype(NeuronLayer.HIDDEN, 2);
+    NeuronGenotype hidden2 = new NeuronGenotype(NeuronLayer.HIDDEN, 3);
+    NeuronGenotype hidden1 = new NeuronGenotype(NeuronLayer.HIDDEN, 4);
+
+    networkGenotype.addNeuron(output);
+    networkGenotype.addNeuron(hidden3);
+    networkGenotype.addNeuron(input);
+    networkGenotype.addNeuron(hidden2);
+    networkGenotype.addNeuron(hidden1);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden3.getUid(), output.getUid(), ig.next(), 2d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden2.getUid(), hidden3.getUid(), ig.next(), 3d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden1.getUid(), hidden2.getUid(), ig.next(), 0.5d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), hidden1.getUid(), ig.next(), 4d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), output.getUid(), ig.next(), -1d, true));
+
+    CompiledNetwork network = CompiledNetwork
+        .createLinearOutputNetworkFromGenotype(networkGenotype);
+    List<Double> result = network.calculateOutputs(2d);
+
+    // hidden1 = 8, hidden2 = 4, hidden3 = 12, output = 24 - 2
+    assertEquals(5, network.getNumLevels());
+    assertEquals(1, result.size());
+    assertEquals(22d, result.get(0), TOLERANCE);
+  }
+
+  @Test(timeout = 10000)
+  public void unconnectedOutputUsesActivationOfZero() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype output1 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    NeuronGenotype output2 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input);
+    networkGenotype.addNeuron(output1);
+    networkGenotype.addNeuron(output2);
+
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), output1.getUid(), 0, 10d, true));
+
+    CompiledNetwork network = CompiledNetwork
+        .createSigmoidOutputNetworkFromGenotype(networkGenotype);
+    List<Double> result = network.calculateOutputs(1d);
+
+    assertEquals(2, result.size());
+    assertEquals(Activation.SIGMOID.apply(10d), result.get(0), TOLERANCE);
+    assertEquals(0.5d, result.get(1), TOLERANCE);
+  }
+
+  @Test(timeout = 10000)
+  public void repeatedCalculationsDoNotInterfere() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input);
+    networkGenotype.addNeuron(hidden);
+    networkGenotype.addNeuron(output);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), hidden.getUid(), ig.next(), 3d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden.getUid(), output.getUid(), ig.next(), 5d, true));
+
+    CompiledNetwork network = CompiledNetwork
+        .createLinearOutputNetworkFromGenotype(networkGenotype);
+
+    assertEquals(75d, network.calculateOutputs(5d).get(0), TOLERANCE);
+    assertEquals(15d, network.calculateOutputs(1d).get(0), TOLERANCE);
+    // Negative inputs are clamped by the input neuron's ReLu activation
+    assertEquals(0d, network.calculateOutputs(-1d).get(0), TOLERANCE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void circularGenotypeCannotBeCompiled() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden1 = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype hidden2 = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input);
+    networkGenotype.addNeuron(hidden1);
+    networkGenotype.addNeuron(hidden2);
+    networkGenotype.addNeuron(output);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), hidden1.getUid(), ig.next(), 1d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden1.getUid(), hidden2.getUid(), ig.next(), 1d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden2.getUid(), hidden1.getUid(), ig.next(), 1d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden2.getUid(), output.getUid(), ig.next(), 1d, true));
+
+    CompiledNetwork.createLinearOutputNetworkFromGenotype(networkGenotype);
+  }
+
+  @Test(expected = InputMismatchException.class)
+  public void cannotProvideBatchInputsNotMatchingBatchSize() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype inputGenotype = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype outputGenotype = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(inputGenotype);
+    networkGenotype.addNeuron(outputGenotype);
+
+    networkGenotype.addConnection(new ConnectionGenotype(inputGenotype.getUid(),
+        outputGenotype.getUid(), 0, 2d, true));
+
+    CompiledNetwork network = CompiledNetwork
+        .createLinearOutputNetworkFromGenotype(networkGenotype);
+    network.calculateBatchOutputs(new double[]{1d, 2d, 3d}, 2);
+  }
+
+  @Test(timeout = 10000)
+  public void batchBufferIsReusedAcrossBatchSizes() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input);
+    networkGenotype.addNeuron(hidden);
+    networkGenotype.addNeuron(output);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), hidden.getUid(), ig.next(), 3d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden.getUid(), output.getUid(), ig.next(), 5d, true));
+
+    CompiledNetwork network = CompiledNetwork
+        .createLinearOutputNetworkFromGenotype(networkGenotype);
+
+    double[] large = network.calculateBatchOutputs(new double[]{1d, 2d, 3d, 4d}, 4);
+    double[] small = network.calculateBatchOutputs(new double[]{5d, -1d}, 2);
+
+    assertArrayEquals(new double[]{15d, 30d, 45d, 60d}, large, TOLERANCE);
+    assertArrayEquals(new double[]{75d, 0d}, small, TOLERANCE);
+  }
+
+  @Test(timeout = 10000)
+  public void batchesSpanningSeveralTilesMatchIndividualCalculation() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input1 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype input2 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input1);
+    networkGenotype.addNeuron(input2);
+    networkGenotype.addNeuron(hidden);
+    networkGenotype.addNeuron(output);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input1.getUid(), hidden.getUid(), ig.next(), 1.3d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), hidden.getUid(), ig.next(), -0.6d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden.getUid(), output.getUid(), ig.next(), 0.9d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), output.getUid(), ig.next(), 0.2d, true));
+
+    CompiledNetwork network = CompiledNetwork
+        .createSigmoidOutputNetworkFromGenotype(networkGenotype);
+
+    // Not a multiple of any tile size
+    final int batchSize = 203;
+    double[] inputs = new double[batchSize * 2];
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = Math.sin(i) * 3d;
+    }
+
+    double[] batchOutputs = network.calculateBatchOutputs(inputs, batchSize);
+
+    double[] sampleOutput = new double[1];
+    for (int s = 0; s < batchSize; s++) {
+      network.calculateOutputs(new double[]{inputs[s * 2], inputs[s * 2 + 1]}, sampleOutput);
+      assertEquals(sampleOutput[0], batchOutputs[s], 0d);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void contextCanBeReusedAcrossNetworks() {
+    NetworkGenotype smallGenotype = new NetworkGenotype();
+    NeuronGenotype smallInput = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype smallOutput = new NeuronGenotype(NeuronLayer.OUTPUT);
+    smallGenotype.addNeuron(smallInput);
+    smallGenotype.addNeuron(smallOutput);
+    smallGenotype.addConnection(
+        new ConnectionGenotype(smallInput.getUid(), smallOutput.getUid(), 0, 2d, true));
+
+    NetworkGenotype largeGenotype = new NetworkGenotype();
+    NeuronGenotype largeInput = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype largeHidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype largeOutput = new NeuronGenotype(NeuronLayer.OUTPUT);
+    largeGenotype.addNeuron(largeInput);
+    largeGenotype.addNeuron(largeHidden);
+    largeGenotype.addNeuron(largeOutput);
+    largeGenotype.addConnection(
+        new ConnectionGenotype(largeInput.getUid(), largeHidden.getUid(), 0, 3d, true));
+    largeGenotype.addConnection(
+        new ConnectionGenotype(largeHidden.getUid(), largeOutput.getUid(), 1, 5d, true));
+
+    CompiledNetwork small = CompiledNetwork.createLinearOutputNetworkFromGenotype(smallGenotype);
+    CompiledNetwork large = CompiledNetwork.createLinearOutputNetworkFromGenotype(largeGenotype);
+
+    EvaluationContext context = new EvaluationContext();
+    double[] output = new double[1];
+
+    small.calculateOutputs(new double[]{4d}, output, context);
+    assertEquals(8d, output[0], TOLERANCE);
+    large.calculateOutputs(new double[]{4d}, output, context);
+    assertEquals(60d, output[0], TOLERANCE);
+    small.calculateOutputs(new double[]{1d}, output, context);
+    assertEquals(2d, output[0], TOLERANCE);
+  }
+
+  @Test(timeout = 30000)
+  public void sharedNetworkGivesConsistentResultsAcrossThreads() throws Exception {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input);
+    networkGenotype.addNeuron(hidden);
+    networkGenotype.addNeuron(output);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), hidden.getUid(), ig.next(), 3d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden.getUid(), output.getUid(), ig.next(), 5d, true));
+
+    final CompiledNetwork network = CompiledNetwork
+        .createLinearOutputNetworkFromGenotype(networkGenotype);
+
+    final int numThreads = 4;
+    final AtomicInteger mismatches = new AtomicInteger();
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final double threadInput = t + 1;
+      threads[t] = new Thread(() -> {
+        EvaluationContext context = network.createEvaluationContext();
+        double[] inputs = {threadInput};
+        double[] outputs = new double[1];
+        for (int i = 0; i < 100000; i++) {
+          network.calculateOutputs(inputs, outputs, context);
+          if (outputs[0] != threadInput * 15d) {
+            mismatches.incrementAndGet();
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(0, mismatches.get());
+  }
+
+  @Test(timeout = 10000)
+  public void deadStructureIsPrunedWithoutChangingOutputs() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype live = new NeuronGenotype(NeuronLayer.HIDDEN);
+    // Reaches no output
+    NeuronGenotype deadEnd = new NeuronGenotype(NeuronLayer.HIDDEN);
+    // Reachable from no input
+    NeuronGenotype unreachable = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input);
+    networkGenotype.addNeuron(live);
+    networkGenotype.addNeuron(deadEnd);
+    networkGenotype.addNeuron(unreachable);
+    networkGenotype.addNeuron(output);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), live.getUid(), ig.next(), 3d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(live.getUid(), output.getUid(), ig.next(), 5d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), deadEnd.getUid(), ig.next(), 2d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(live.getUid(), deadEnd.getUid(), ig.next(), 2d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(unreachable.getUid(), output.getUid(), ig.next(), 7d, true));
+    // Disabled connections are not counted as pruned
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input.getUid(), output.getUid(), ig.next(), 1d, false));
+
+    CompiledNetwork network = CompiledNetwork
+        .createLinearOutputNetworkFromGenotype(networkGenotype);
+
+    assertEquals(2, network.getNumPrunedNeurons());
+    assertEquals(3, network.getNumPrunedConnections());
+    assertEquals(3, network.getNumNeurons());
+    assertEquals(75d, network.calculateOutputs(5d).get(0), TOLERANCE);
+  }
+
+  @Test(timeout = 10000)
+  public void fullyLiveNetworkIsNotPruned() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input1 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype input2 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input1);
+    networkGenotype.addNeuron(input2);
+    networkGenotype.addNeuron(hidden);
+    networkGenotype.addNeuron(output);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input1.getUid(), hidden.getUid(), ig.next(), 1d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden.getUid(), output.getUid(), ig.next(), 1d, true));
+    // Input with no connections is still part of the network's interface
+    CompiledNetwork network = CompiledNetwork
+        .createLinearOutputNetworkFromGenotype(networkGenotype);
+
+    assertEquals(0, network.getNumPrunedNeurons());
+    assertEquals(0, network.getNumPrunedConnections());
+    assertEquals(2, network.getNumInputs());
+    assertEquals(4d, network.calculateOutputs(4d, 9d).get(0), TOLERANCE);
+  }
+
+  @Test(timeout = 30000)
+  public void parallelCalculationMatchesSerialOnWideNetwork() {
+    final int numInputs = 8;
+    final int width = 3000;
+    Random random = new Random(7);
+
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+    List<NeuronGenotype> inputs = new ArrayList<>();
+    for (int i = 0; i < numInputs; i++) {
+      NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+      inputs.add(input);
+      networkGenotype.addNeuron(input);
+    }
+    NeuronGenotype output1 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    NeuronGenotype output2 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(output1);
+    networkGenotype.addNeuron(output2);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    for (int h = 0; h < width; h++) {
+      NeuronGenotype hidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+      networkGenotype.addNeuron(hidden);
+      for (NeuronGenotype input : inputs) {
+        networkGenotype.addConnection(new ConnectionGenotype(input.getUid(), hidden.getUid(),
+            ig.next(), random.nextGaussian(), true));
+      }
+      networkGenotype.addConnection(new ConnectionGenotype(hidden.getUid(), output1.getUid(),
+          ig.next(), random.nextGaussian(), true));
+      networkGenotype.addConnection(new ConnectionGenotype(hidden.getUid(), output2.getUid(),
+          ig.next(), random.nextGaussian(), true));
+    }
+
+    CompiledNetwork network
+        = CompiledNetwork.createNetworkFromGenotype(networkGenotype, Activation.TANH);
+    EvaluationContext context = network.createEvaluationContext();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      double[] serialOutputs = new double[2];
+      double[] parallelOutputs = new double[2];
+      for (int trial = 0; trial < 20; trial++) {
+        double[] sample = new double[numInputs];
+        for (int i = 0; i < numInputs; i++) {
+          sample[i] = random.nextDouble() * 2d;
+        }
+        network.calculateOutputs(sample, serialOutputs, context);
+        network.calculateOutputsInParallel(sample, parallelOutputs, context, pool);
+        assertArrayEquals(serialOutputs, parallelOutputs, 0d);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Reference calculation using the Neuron object graph
+   */
+  private static List<Double> calculateWithNeurons(NetworkGenotype genotype,
+      Activation outputActivation, List<Double> inputs) {
+
+    List<NeuronGenotype> neuronGenotypes = new ArrayList<>(genotype.getNeurons());
+    neuronGenotypes.sort(Comparator.comparingInt(NeuronGenotype::getUid));
+
+    Map<Integer, Neuron> uidNeuronMap = new HashMap<>();
+    List<Neuron> neurons = new ArrayList<>();
+    List<InputNeuron> inputNeurons = new ArrayList<>();
+    List<Neuron> outputNeurons = new ArrayList<>();
+    for (NeuronGenotype neuronGenotype : neuronGenotypes) {
+      Neuron neuron;
+      if (neuronGenotype.getLayer() == NeuronLayer.INPUT) {
+        neuron = new InputNeuron(Activation.RELU);
+        inputNeurons.add((InputNeuron) neuron);
+      } else if (neuronGenotype.getLayer() == NeuronLayer.OUTPUT) {
+        neuron = new Neuron(outputActivation);
+        outputNeurons.add(neuron);
+      } else {
+        neuron = new Neuron(Activation.RELU);
+      }
+      neurons.add(neuron);
+      uidNeuronMap.put(neuronGenotype.getUid(), neuron);
+    }
+    for (ConnectionGenotype connection : genotype.getConnections()) {
+      if (connection.isEnabled()) {
+        uidNeuronMap.get(connection.getNeuronTo())
+            .addInput(uidNeuronMap.get(connection.getNeuronFrom()), connection.getWeight());
+      }
+    }
+
+    for (int i = 0; i < inputs.size(); i++) {
+      inputNeurons.get(i).setInput(inputs.get(i));
+    }
+    while (!outputNeurons.stream().allMatch(Neuron::isOutputting)) {
+      for (Neuron neuron : neurons) {
+        neuron.tryCalculate();
+      }
+    }
+
+    List<Double> results = new ArrayList<>();
+    for (Neuron outputNeuron : outputNeurons) {
+      results.add(outputNeuron.getOutput());
+    }
+    return results;
+  }
+
+  @Test(timeout = 30000)
+  public void mutatedGenotypesMatchNeuronGraphCalculation() {
+    Random random = new Random(42);
+    InnovationGenerator innovation = new InnovationGenerator();
+
+    NetworkGenotype genotype = new NetworkGenotype();
+    List<NeuronGenotype> inputs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      NeuronGenotype input = new NeuronGenotype(NeuronLayer.INPUT);
+      inputs.add(input);
+      genotype.addNeuron(input);
+    }
+    for (int o = 0; o < 2; o++) {
+      NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+      genotype.addNeuron(output);
+      for (NeuronGenotype input : inputs) {
+        genotype.addConnection(new ConnectionGenotype(input.getUid(), output.getUid(),
+            innovation.next(), random.nextDouble() * 2 - 1, true));
+      }
+    }
+
+    for (int generation = 0; generation < 200; generation++) {
+      if (random.nextDouble() < 0.5) {
+        genotype.weightMutation(random);
+      }
+      if (random.nextDouble() < 0.3) {
+        genotype.addConnectionMutation(random, innovation, 10);
+      }
+      if (random.nextDouble() < 0.2) {
+        genotype.addNeuronMutation(random, innovation);
+      }
+
+      CompiledNetwork network = CompiledNetwork
+          .createSigmoidOutputNetworkFromGenotype(genotype);
+      List<Double> sample = Arrays.asList(
+          random.nextDouble() * 4 - 2, random.nextDouble() * 4 - 2, random.nextDouble() * 4 - 2);
+
+      List<Double> expected = calculateWithNeurons(genotype, Activation.SIGMOID, sample);
+      List<Double> actual = network.calculateOutputs(sample);
+      assertEquals(expected.get(0), actual.get(0), 0d);
+      assertEquals(expected.get(1), actual.get(1), 0d);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void independentNeuronsShareALevel() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input1 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype input2 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden1 = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype hidden2 = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype hidden3 = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input1);
+    networkGenotype.addNeuron(input2);
+    networkGenotype.addNeuron(hidden1);
+    networkGenotype.addNeuron(hidden2);
+    networkGenotype.addNeuron(hidden3);
+    networkGenotype.addNeuron(output);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input1.getUid(), hidden1.getUid(), ig.next(), 1d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), hidden2.getUid(), ig.next(), 2d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input1.getUid(), hidden3.getUid(), ig.next(), 3d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden1.getUid(), output.getUid(), ig.next(), 1d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden2.getUid(), output.getUid(), ig.next(), 1d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden3.getUid(), output.getUid(), ig.next(), 1d, true));
+    // Skips a level
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), output.getUid(), ig.next(), 10d, true));
+
+    CompiledNetwork network = CompiledNetwork
+        .createLinearOutputNetworkFromGenotype(networkGenotype);
+
+    // inputs, hidden, output
+    assertEquals(3, network.getNumLevels());
+    assertArrayEquals(new int[]{0, 2, 5, 6}, network.getLevelStarts());
+    assertEquals(1d + 4d + 3d + 20d, network.calculateOutputs(1d, 2d).get(0), TOLERANCE);
+  }
+}
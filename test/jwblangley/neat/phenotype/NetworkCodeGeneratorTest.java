@@ -0,0 +1,175 @@
+package jwblangley.neat.phenotype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.Random;
+import javax.tools.ToolProvider;
+import jwblangley.neat.evolution.InnovationGenerator;
+import jwblangley.neat.genotype.ConnectionGenotype;
+import jwblangley.neat.genotype.NetworkGenotype;
+import jwblangley.neat.genotype.NeuronGenotype;
+import jwblangley.neat.genotype.NeuronLayer;
+import org.junit.Test;
+
+public class NetworkCodeGeneratorTest {
+
+  private static NetworkGenotype createGenotype() {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input1 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype input2 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden1 = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype hidden2 = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output1 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    NeuronGenotype output2 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input1);
+    networkGenotype.addNeuron(input2);
+    networkGenotype.addNeuron(hidden1);
+    networkGenotype.addNeuron(hidden2);
+    networkGenotype.addNeuron(output1);
+    networkGenotype.addNeuron(output2);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input1.getUid(), hidden1.getUid(), ig.next(), 0.31d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), hidden1.getUid(), ig.next(), -1.7d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden1.getUid(), hidden2.getUid(), ig.next(), 2.2d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input1.getUid(), hidden2.getUid(), ig.next(), 0.5d, false));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden2.getUid(), output1.getUid(), ig.next(), -0.9d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), output2.getUid(), ig.next(), 1.1d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden1.getUid(), output2.getUid(), ig.next(), 0.05d, true));
+
+    return networkGenotype;
+  }
+
+  @Test
+  public void generatedSourceDeclaresRequestedClass() {
+    String source = NetworkCodeGenerator
+        .generateSource(createGenotype(), Activation.SIGMOID, "Champion");
+
+    assertTrue(source.contains("public final class Champion"));
+    assertTrue(source.contains("package " + NetworkCodeGenerator.GENERATED_PACKAGE + ";"));
+  }
+
+  @Test(timeout = 60000)
+  public void generatedNetworkMatchesNetwork() {
+    assumeNotNull(ToolProvider.getSystemJavaCompiler());
+
+    NetworkGenotype genotype = createGenotype();
+
+    for (Activation activation : Activation.values()) {
+      Network network = Network.createNetworkFromGenotype(genotype, activation);
+      GeneratedNetwork generated = NetworkCodeGenerator.compile(genotype, activation);
+
+      assertEquals(network.getNumInputs(), generated.getNumInputs());
+      assertEquals(network.getNumOutputs(), generated.getNumOutputs());
+
+      for (double a = -3d; a <= 3d; a += 0.5d) {
+        for (double b = -3d; b <= 3d; b += 0.5d) {
+          List<Double> expected = network.calculateOutputs(a, b);
+          List<Double> actual = generated.calculateOutputs(a, b);
+
+          assertEquals(expected.get(0), actual.get(0), 0d);
+          assertEquals(expected.get(1), actual.get(1), 0d);
+        }
+      }
+    }
+  }
+
+  @Test(expected = InputMismatchException.class, timeout = 60000)
+  public void generatedNetworkRejectsWrongNumberOfInputs() {
+    assumeNotNull(ToolProvider.getSystemJavaCompiler());
+
+    GeneratedNetwork generated = NetworkCodeGenerator
+        .compile(createGenotype(), Activation.LINEAR);
+    generated.calculateOutputs(new double[]{1d}, new double[2]);
+  }
+
+  /**
+   * @return network with every input connected to every hidden neuron, and every hidden neuron
+   *     connected to the single output
+   */
+  private static NetworkGenotype createWideGenotype(int numInputs, int numHidden) {
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+    InnovationGenerator ig = new InnovationGenerator();
+    Random random = new Random(1);
+
+    NeuronGenotype[] inputs = new NeuronGenotype[numInputs];
+    for (int i = 0; i < numInputs; i++) {
+      inputs[i] = new NeuronGenotype(NeuronLayer.INPUT);
+      networkGenotype.addNeuron(inputs[i]);
+    }
+    NeuronGenotype output = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(output);
+    for (int h = 0; h < numHidden; h++) {
+      NeuronGenotype hidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+      networkGenotype.addNeuron(hidden);
+      for (NeuronGenotype input : inputs) {
+        networkGenotype.addConnection(new ConnectionGenotype(input.getUid(), hidden.getUid(),
+            ig.next(), random.nextDouble() * 2 - 1, true));
+      }
+      networkGenotype.addConnection(new ConnectionGenotype(hidden.getUid(), output.getUid(),
+          ig.next(), random.nextDouble() * 2 - 1, true));
+    }
+    return networkGenotype;
+  }
+
+  private static void assertGeneratedMatchesNetwork(NetworkGenotype genotype) {
+    Network network = Network.createSigmoidOutputNetworkFromGenotype(genotype);
+    GeneratedNetwork generated = NetworkCodeGenerator.compile(genotype, Activation.SIGMOID);
+
+    Random random = new Random(2);
+    double[] inputs = new double[network.getNumInputs()];
+    double[] expected = new double[network.getNumOutputs()];
+    double[] actual = new double[network.getNumOutputs()];
+    for (int sample = 0; sample < 20; sample++) {
+      for (int i = 0; i < inputs.length; i++) {
+        inputs[i] = random.nextDouble() * 4 - 2;
+      }
+      network.calculateOutputs(inputs, expected);
+      generated.calculateOutputs(inputs, actual);
+      assertEquals(expected[0], actual[0], 0d);
+    }
+  }
+
+  @Test
+  public void largeNetworkIsSplitAcrossMethods() {
+    String source = NetworkCodeGenerator
+        .generateSource(createWideGenotype(8, 200), Activation.SIGMOID, "Wide");
+
+    assertTrue(source.contains("chunk0("));
+    assertTrue(source.contains("chunk1("));
+  }
+
+  @Test(timeout = 120000)
+  public void largeGeneratedNetworkMatchesNetwork() {
+    assumeNotNull(ToolProvider.getSystemJavaCompiler());
+
+    assertGeneratedMatchesNetwork(createWideGenotype(8, 200));
+  }
+
+  @Test(timeout = 120000)
+  public void neuronWithManyConnectionsMatchesNetwork() {
+    assumeNotNull(ToolProvider.getSystemJavaCompiler());
+
+    // A single hidden neuron with more connections than fit in one method
+    assertGeneratedMatchesNetwork(createWideGenotype(3000, 1));
+  }
+
+  @Test(timeout = 120000)
+  public void networkTooLargeToGenerateFallsBack() {
+    final int numHidden = NetworkCodeGenerator.MAX_GENERATED_CONNECTIONS / 8;
+
+    assertGeneratedMatchesNetwork(createWideGenotype(8, numHidden));
+  }
+}
@@ -203,4 +203,136 @@ public class NetworkTest {
     assertEquals(-4, result.get(1), TOLERANCE);
   }
 
+  @Test(timeout = 10000)
+  public void primitiveCalculationMatchesBoxedCalculation() {
+    // Setup genotype
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input1 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype input2 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output1 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    NeuronGenotype output2 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input1);
+    networkGenotype.addNeuron(input2);
+    networkGenotype.addNeuron(hidden);
+    networkGenotype.addNeuron(output1);
+    networkGenotype.addNeuron(output2);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input1.getUid(), hidden.getUid(), ig.next(), 0.7d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), hidden.getUid(), ig.next(), -0.3d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden.getUid(), output1.getUid(), ig.next(), 1.5d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), output2.getUid(), ig.next(), -2d, true));
+
+    // Create phenotype
+    Network network = Network.createSigmoidOutputNetworkFromGenotype(networkGenotype);
+    assertEquals(2, network.getNumInputs());
+    assertEquals(2, network.getNumOutputs());
+
+    List<Double> boxed = network.calculateOutputs(3d, 1d);
+
+    double[] outputs = new double[network.getNumOutputs()];
+    network.calculateOutputs(new double[]{3d, 1d}, outputs);
+
+    assertEquals(boxed.get(0), outputs[0], TOLERANCE);
+    assertEquals(boxed.get(1), outputs[1], TOLERANCE);
+  }
+
+  @Test(expected = InputMismatchException.class)
+  public void cannotProvideWrongSizedOutputBuffer() {
+    // Setup genotype
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype inputGenotype = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype outputGenotype = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(inputGenotype);
+    networkGenotype.addNeuron(outputGenotype);
+
+    InnovationGenerator innovationGenerator = new InnovationGenerator();
+    ConnectionGenotype connectionGenotype = new ConnectionGenotype(inputGenotype.getUid(),
+        outputGenotype.getUid(), innovationGenerator.next(), 2d, true);
+    networkGenotype.addConnection(connectionGenotype);
+
+    // Create phenotype
+    Network network = Network.createLinearOutputNetworkFromGenotype(networkGenotype);
+    network.calculateOutputs(new double[]{2.5d}, new double[2]);
+  }
+
+  @Test(timeout = 10000)
+  public void fastSigmoidNetworkIsCloseToSigmoidNetwork() {
+    // Setup genotype
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype inputGenotype = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype outputGenotype = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(inputGenotype);
+    networkGenotype.addNeuron(outputGenotype);
+
+    InnovationGenerator innovationGenerator = new InnovationGenerator();
+    ConnectionGenotype connectionGenotype = new ConnectionGenotype(inputGenotype.getUid(),
+        outputGenotype.getUid(), innovationGenerator.next(), 0.8d, true);
+    networkGenotype.addConnection(connectionGenotype);
+
+    // Create phenotypes
+    Network exact = Network.createSigmoidOutputNetworkFromGenotype(networkGenotype);
+    Network fast = Network.createNetworkFromGenotype(networkGenotype, Activation.FAST_SIGMOID);
+
+    for (double input = 0d; input < 10d; input += 0.5d) {
+      assertEquals(exact.calculateOutputs(input).get(0), fast.calculateOutputs(input).get(0),
+          Activation.FAST_SIGMOID_MAX_ERROR);
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void batchCalculationMatchesIndividualCalculation() {
+    // Setup genotype
+    NetworkGenotype networkGenotype = new NetworkGenotype();
+
+    NeuronGenotype input1 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype input2 = new NeuronGenotype(NeuronLayer.INPUT);
+    NeuronGenotype hidden = new NeuronGenotype(NeuronLayer.HIDDEN);
+    NeuronGenotype output1 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    NeuronGenotype output2 = new NeuronGenotype(NeuronLayer.OUTPUT);
+    networkGenotype.addNeuron(input1);
+    networkGenotype.addNeuron(input2);
+    networkGenotype.addNeuron(hidden);
+    networkGenotype.addNeuron(output1);
+    networkGenotype.addNeuron(output2);
+
+    InnovationGenerator ig = new InnovationGenerator();
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input1.getUid(), hidden.getUid(), ig.next(), 0.7d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), hidden.getUid(), ig.next(), -0.3d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(hidden.getUid(), output1.getUid(), ig.next(), 1.5d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input1.getUid(), output2.getUid(), ig.next(), 0.25d, true));
+    networkGenotype.addConnection(
+        new ConnectionGenotype(input2.getUid(), output2.getUid(), ig.next(), -2d, true));
+
+    // Create phenotype
+    Network network = Network.createSigmoidOutputNetworkFromGenotype(networkGenotype);
+
+    final int batchSize = 7;
+    double[] inputs = new double[batchSize * 2];
+    for (int i = 0; i < inputs.length; i++) {
+      inputs[i] = i * 0.37d - 1d;
+    }
+
+    double[] batchOutputs = network.calculateBatchOutputs(inputs, batchSize);
+    assertEquals(batchSize * 2, batchOutputs.length);
+
+    for (int s = 0; s < batchSize; s++) {
+      List<Double> individual = network.calculateOutputs(inputs[s * 2], inputs[s * 2 + 1]);
+      assertEquals(individual.get(0), batchOutputs[s * 2], 0d);
+      assertEquals(individual.get(1), batchOutputs[s * 2 + 1], 0d);
+    }
+  }
+
 }
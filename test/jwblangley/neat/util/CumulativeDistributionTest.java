@@ -0,0 +1,72 @@
+package jwblangley.neat.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class CumulativeDistributionTest {
+
+  @Test(expected = IllegalArgumentException.class)
+  public void emptyDistributionIsRejected() {
+    new CumulativeDistribution(new double[0]);
+  }
+
+  @Test
+  public void zeroWeightIndicesAreNeverSampled() {
+    CumulativeDistribution distribution = new CumulativeDistribution(new double[]{0, 1, 0, 1, 0});
+    Random random = new Random(1);
+
+    for (int i = 0; i < 1000; i++) {
+      final int sample = distribution.sample(random);
+      assertEquals(1, sample % 2);
+    }
+  }
+
+  @Test
+  public void samplesAreProportionalToWeight() {
+    final double[] weights = {1, 2, 3, 4};
+    final int numSamples = 100000;
+    CumulativeDistribution distribution = new CumulativeDistribution(weights);
+    Random random = new Random(2);
+
+    final int[] counts = new int[weights.length];
+    for (int i = 0; i < numSamples; i++) {
+      counts[distribution.sample(random)]++;
+    }
+
+    for (int i = 0; i < weights.length; i++) {
+      assertEquals(weights[i] / 10, counts[i] / (double) numSamples, 0.01);
+    }
+  }
+
+  @Test
+  public void samplesMatchLinearScan() {
+    final double[] weights = {0.5, 0, 2.25, 1, 0.125, 3};
+    CumulativeDistribution distribution = new CumulativeDistribution(weights);
+    Random sampleRandom = new Random(3);
+    Random scanRandom = new Random(3);
+
+    final double total = Arrays.stream(weights).sum();
+    for (int i = 0; i < 1000; i++) {
+      final double target = scanRandom.nextDouble();
+      int expected = weights.length - 1;
+      double acc = 0;
+      for (int w = 0; w < weights.length; w++) {
+        acc += weights[w] / total;
+        if (acc > target) {
+          expected = w;
+          break;
+        }
+      }
+      assertEquals(expected, distribution.sample(sampleRandom));
+    }
+  }
+
+  @Test
+  public void allZeroWeightsSampleLastIndex() {
+    CumulativeDistribution distribution = new CumulativeDistribution(new double[]{0, 0, 0});
+    assertEquals(2, distribution.sample(new Random(4)));
+  }
+}
@@ -0,0 +1,56 @@
+package jwblangley.neat.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class GeneAlignmentTest {
+
+  private final static double DELTA = 0.00001;
+
+  @Test
+  public void alignmentCountsAllGeneKinds() {
+    int[] firstInnovations = {0, 1, 3, 4, 7, 9};
+    double[] firstWeights = {1, 2, 3, 4, 5, 6};
+    int[] secondInnovations = {0, 2, 3, 5};
+    double[] secondWeights = {0.5, 1, 5, 1};
+
+    GeneAlignment alignment
+        = GeneAlignment.align(firstInnovations, firstWeights, secondInnovations, secondWeights);
+
+    // Disjoint: 1, 2, 4, 5 - Excess: 7, 9 - Matching: 0, 3
+    assertEquals(4, alignment.getDisjoints());
+    assertEquals(2, alignment.getExcesses());
+    assertEquals(2, alignment.getMatching());
+    assertEquals(2.5, alignment.getTotalWeightDifference(), DELTA);
+    assertEquals(1.25, alignment.getAverageWeightDifference(), DELTA);
+  }
+
+  @Test
+  public void alignmentIsSymmetric() {
+    int[] firstInnovations = {2, 6, 8};
+    double[] firstWeights = {1, -1, 1};
+    int[] secondInnovations = {1, 2, 3, 10, 11};
+    double[] secondWeights = {1, 1, 1, 1, 1};
+
+    GeneAlignment forwards
+        = GeneAlignment.align(firstInnovations, firstWeights, secondInnovations, secondWeights);
+    GeneAlignment backwards
+        = GeneAlignment.align(secondInnovations, secondWeights, firstInnovations, firstWeights);
+
+    assertEquals(forwards.getDisjoints(), backwards.getDisjoints());
+    assertEquals(forwards.getExcesses(), backwards.getExcesses());
+    assertEquals(forwards.getMatching(), backwards.getMatching());
+    assertEquals(forwards.getTotalWeightDifference(), backwards.getTotalWeightDifference(), DELTA);
+  }
+
+  @Test
+  public void noMatchingGenesHasUndefinedAverageWeightDifference() {
+    GeneAlignment alignment
+        = GeneAlignment.align(new int[]{0}, new double[]{1}, new int[]{1}, new double[]{1});
+
+    assertEquals(0, alignment.getMatching());
+    assertTrue(Double.isNaN(alignment.getAverageWeightDifference()));
+  }
+}